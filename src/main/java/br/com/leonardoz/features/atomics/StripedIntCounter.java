@@ -0,0 +1,47 @@
+package br.com.leonardoz.features.atomics;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Striped counter with int values
+ *
+ * Drop-in for counters like AtomicCounter and VisitCounter that expose an
+ * int. Cells are still longs (see StripedLongCounter); the int views wrap
+ * around on overflow, just like an AtomicInteger would.
+ *
+ */
+@ThreadSafe
+public class StripedIntCounter {
+
+	private final StripedLongCounter counter = new StripedLongCounter();
+
+	public void increment() {
+		counter.add(1L);
+	}
+
+	public void decrement() {
+		counter.add(-1L);
+	}
+
+	public void add(int x) {
+		counter.add(x);
+	}
+
+	public int sum() {
+		return (int) counter.sum();
+	}
+
+	public int sumThenReset() {
+		return (int) counter.sumThenReset();
+	}
+
+	public void reset() {
+		counter.reset();
+	}
+
+	@Override
+	public String toString() {
+		return Integer.toString(sum());
+	}
+
+}
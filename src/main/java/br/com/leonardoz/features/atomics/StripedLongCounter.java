@@ -0,0 +1,294 @@
+package br.com.leonardoz.features.atomics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+import br.com.leonardoz.patterns.thread_safe.shared_state.VisitCounter;
+
+/**
+ * Striped counter
+ *
+ * AtomicCounter keeps its value in a single AtomicInteger: every thread
+ * increments the same memory position, so under contention most CAS fail and
+ * the cache line keeps bouncing between cores. VisitCounter is worse, each
+ * increment takes the monitor.
+ *
+ * A striped counter spreads the updates over several cells. Without contention
+ * all updates go to a base field; after the first failed CAS an array of cells
+ * is created, and each thread updates the cell its probe (a per-thread hash)
+ * points to. Colliding threads change their probe, and the array doubles until
+ * it has as many cells as processors. The value is the sum of base and cells.
+ *
+ * Each cell is padded so two cells never share a cache line (the manual
+ * version of @Contended, which is internal to the JDK).
+ *
+ * Trade-off: sum() is not an atomic snapshot. If there are concurrent updates
+ * it may miss some of them. Counters that are written a lot and read rarely
+ * (statistics, request counting) fit well; a sequence generator doesn't.
+ *
+ * This is the idea behind java.util.concurrent.atomic.LongAdder.
+ *
+ */
+@ThreadSafe
+public class StripedLongCounter {
+
+	private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+	private static final VarHandle BASE;
+	private static final VarHandle CELLS_BUSY;
+	private static final VarHandle CELL_VALUE;
+
+	static {
+		try {
+			var lookup = MethodHandles.lookup();
+			BASE = lookup.findVarHandle(StripedLongCounter.class, "base", long.class);
+			CELLS_BUSY = lookup.findVarHandle(StripedLongCounter.class, "cellsBusy", int.class);
+			CELL_VALUE = lookup.findVarHandle(CellValue.class, "value", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/*
+	 * Padding before and after the value: fields of a superclass are laid out
+	 * before the fields of the subclass.
+	 */
+	static class CellLeftPadding {
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	static class CellValue extends CellLeftPadding {
+		volatile long value;
+	}
+
+	static final class Cell extends CellValue {
+		long q1, q2, q3, q4, q5, q6, q7;
+
+		Cell(long value) {
+			this.value = value;
+		}
+
+		boolean cas(long expected, long newValue) {
+			return CELL_VALUE.compareAndSet(this, expected, newValue);
+		}
+	}
+
+	/*
+	 * Per thread hash used to pick a cell, changed when it collides.
+	 */
+	private static final ThreadLocal<int[]> PROBE = ThreadLocal
+			.withInitial(() -> new int[] { ThreadLocalRandom.current().nextInt() | 1 });
+
+	private volatile long base;
+	private volatile Cell[] cells;
+	private volatile int cellsBusy; // spin lock used to create and resize cells
+
+	public void increment() {
+		add(1L);
+	}
+
+	public void decrement() {
+		add(-1L);
+	}
+
+	public void add(long x) {
+		var cs = cells;
+		long b;
+		if (cs == null && BASE.compareAndSet(this, b = base, b + x)) {
+			return; // uncontended
+		}
+		var probe = PROBE.get();
+		if (cs != null) {
+			var c = cs[probe[0] & (cs.length - 1)];
+			long v;
+			if (c != null && c.cas(v = c.value, v + x)) {
+				return;
+			}
+		}
+		contendedAdd(x, probe);
+	}
+
+	private void contendedAdd(long x, int[] probe) {
+		var h = probe[0];
+		var collide = false;
+		while (true) {
+			var cs = cells;
+			if (cs != null) {
+				var n = cs.length;
+				var c = cs[h & (n - 1)];
+				if (c == null) {
+					if (cellsBusy == 0 && tryLock()) {
+						try {
+							var current = cells;
+							var slot = h & (current.length - 1);
+							if (current[slot] == null) {
+								current[slot] = new Cell(x);
+								return;
+							}
+						} finally {
+							unlock();
+						}
+						continue; // slot taken meanwhile
+					}
+					collide = false;
+				} else {
+					long v;
+					if (c.cas(v = c.value, v + x)) {
+						return;
+					}
+					if (n >= NCPU || cells != cs) {
+						collide = false; // at max size, or already resized
+					} else if (!collide) {
+						collide = true;
+					} else if (cellsBusy == 0 && tryLock()) {
+						try {
+							if (cells == cs) {
+								var grown = new Cell[n << 1];
+								System.arraycopy(cs, 0, grown, 0, n);
+								cells = grown;
+							}
+						} finally {
+							unlock();
+						}
+						collide = false;
+						continue; // retry with the bigger array
+					}
+				}
+				h = rehash(h);
+				probe[0] = h;
+			} else if (cellsBusy == 0 && cells == cs && tryLock()) {
+				try {
+					if (cells == cs) {
+						var created = new Cell[2];
+						created[h & 1] = new Cell(x);
+						cells = created;
+						return;
+					}
+				} finally {
+					unlock();
+				}
+			} else {
+				long b;
+				if (BASE.compareAndSet(this, b = base, b + x)) {
+					return;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Xorshift, moves the thread to another cell.
+	 */
+	private static int rehash(int h) {
+		h ^= h << 13;
+		h ^= h >>> 17;
+		h ^= h << 5;
+		return h;
+	}
+
+	private boolean tryLock() {
+		return CELLS_BUSY.compareAndSet(this, 0, 1);
+	}
+
+	private void unlock() {
+		cellsBusy = 0;
+	}
+
+	public long sum() {
+		var sum = base;
+		var cs = cells;
+		if (cs != null) {
+			for (var c : cs) {
+				if (c != null) {
+					sum += c.value;
+				}
+			}
+		}
+		return sum;
+	}
+
+	/*
+	 * Returns the sum and sets everything to zero. Updates happening at the same
+	 * time may be counted in the next period or lost in this one, so only use
+	 * it when updates are quiet or when that imprecision is acceptable.
+	 */
+	public long sumThenReset() {
+		var sum = (long) BASE.getAndSet(this, 0L);
+		var cs = cells;
+		if (cs != null) {
+			for (var c : cs) {
+				if (c != null) {
+					sum += (long) CELL_VALUE.getAndSet(c, 0L);
+				}
+			}
+		}
+		return sum;
+	}
+
+	public void reset() {
+		sumThenReset();
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(sum());
+	}
+
+	/**
+	 * Dummy benchmark: every thread increments its counter 5M times, from 1
+	 * thread up to twice the processors, comparing AtomicCounter, VisitCounter,
+	 * LongAdder and this counter. Don't take it seriously, run it on your
+	 * machine.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var increments = 5_000_000;
+		for (int threads = 1; threads <= NCPU * 2; threads *= 2) {
+			System.out.println("#### " + threads + " thread(s)");
+
+			var atomic = new UsingAtomics.AtomicCounter();
+			run("AtomicCounter", threads, increments, atomic::increment, atomic::get);
+
+			var visits = new VisitCounter();
+			run("VisitCounter", threads, increments, visits::increase, visits::actualValue);
+
+			var adder = new LongAdder();
+			run("LongAdder", threads, increments, adder::increment, adder::sum);
+
+			var striped = new StripedLongCounter();
+			run("StripedLongCounter", threads, increments, striped::increment, striped::sum);
+
+			System.out.println();
+		}
+	}
+
+	private static void run(String name, int threads, int increments, Runnable increment, LongSupplier value)
+			throws InterruptedException {
+		var start = new CountDownLatch(1);
+		var done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < increments; i++) {
+					increment.run();
+				}
+				done.countDown();
+			}).start();
+		}
+		var before = System.nanoTime();
+		start.countDown();
+		done.await();
+		var millis = Math.max(1, (System.nanoTime() - before) / 1_000_000);
+		System.out.println(name + ": " + value.getAsLong() + " in " + millis + " ms, "
+				+ ((long) threads * increments / millis) + " ops/ms");
+	}
+
+}
@@ -0,0 +1,369 @@
+package br.com.leonardoz.features.forkjoin;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import br.com.leonardoz.patterns.GuardedBy;
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Continuous ForkJoinPool monitoring
+ *
+ * UsingForkJoinFramework#debugPool prints the state of a pool once. Starvation
+ * (tasks queued while threads are idle or blocked) only shows up over time, so
+ * this monitor samples every registered pool on a schedule and keeps the most
+ * recent samples in a ring buffer.
+ *
+ * From the window of samples it derives:
+ *
+ * Steal rate: steals per second, how much the work-stealing is balancing the
+ * load.
+ *
+ * Utilization: running threads (not blocked in a join or in I/O) divided by
+ * the parallelism level, averaged over the window.
+ *
+ * Every pool is also exposed over JMX (see PoolStatsMXBean), under the name
+ * br.com.leonardoz.features.forkjoin:type=ForkJoinPoolMonitor,name=(pool name)
+ * so any JMX console (jconsole, VisualVM...) can watch it.
+ *
+ */
+@ThreadSafe
+public class ForkJoinPoolMonitor implements AutoCloseable {
+
+	private static final String JMX_DOMAIN = "br.com.leonardoz.features.forkjoin";
+
+	/**
+	 * Snapshot of a pool at some instant.
+	 */
+	public static final class Sample {
+		private final long timestampNanos;
+		private final int parallelism;
+		private final int poolSize;
+		private final int activeThreadCount;
+		private final int runningThreadCount;
+		private final int queuedSubmissionCount;
+		private final long queuedTaskCount;
+		private final long stealCount;
+
+		private Sample(ForkJoinPool pool) {
+			this.timestampNanos = System.nanoTime();
+			this.parallelism = pool.getParallelism();
+			this.poolSize = pool.getPoolSize();
+			this.activeThreadCount = pool.getActiveThreadCount();
+			this.runningThreadCount = pool.getRunningThreadCount();
+			this.queuedSubmissionCount = pool.getQueuedSubmissionCount();
+			this.queuedTaskCount = pool.getQueuedTaskCount();
+			this.stealCount = pool.getStealCount();
+		}
+
+		public long getTimestampNanos() {
+			return timestampNanos;
+		}
+
+		public int getParallelism() {
+			return parallelism;
+		}
+
+		public int getPoolSize() {
+			return poolSize;
+		}
+
+		public int getActiveThreadCount() {
+			return activeThreadCount;
+		}
+
+		public int getRunningThreadCount() {
+			return runningThreadCount;
+		}
+
+		public int getQueuedSubmissionCount() {
+			return queuedSubmissionCount;
+		}
+
+		public long getQueuedTaskCount() {
+			return queuedTaskCount;
+		}
+
+		public long getStealCount() {
+			return stealCount;
+		}
+
+		@Override
+		public String toString() {
+			return "Sample [parallelism=" + parallelism + ", poolSize=" + poolSize + ", active="
+					+ activeThreadCount + ", running=" + runningThreadCount + ", queuedSubmissions="
+					+ queuedSubmissionCount + ", queuedTasks=" + queuedTaskCount + ", steals=" + stealCount + "]";
+		}
+	}
+
+	/**
+	 * What is exposed over JMX for every registered pool.
+	 */
+	public interface PoolStatsMXBean {
+
+		int getParallelism();
+
+		int getPoolSize();
+
+		int getActiveThreadCount();
+
+		int getRunningThreadCount();
+
+		int getQueuedSubmissionCount();
+
+		long getQueuedTaskCount();
+
+		long getStealCount();
+
+		double getStealRatePerSecond();
+
+		double getUtilization();
+
+		int getSampleCount();
+
+	}
+
+	/**
+	 * Ring buffer of the latest samples of one pool.
+	 */
+	@ThreadSafe
+	public static final class PoolStats implements PoolStatsMXBean {
+
+		private final ForkJoinPool pool;
+
+		@GuardedBy("this")
+		private final Sample[] samples;
+		@GuardedBy("this")
+		private int next;
+		@GuardedBy("this")
+		private int count;
+
+		private PoolStats(ForkJoinPool pool, int historySize) {
+			this.pool = pool;
+			this.samples = new Sample[historySize];
+		}
+
+		private void sample() {
+			var sample = new Sample(pool); // taken outside the lock
+			synchronized (this) {
+				samples[next] = sample;
+				next = (next + 1) % samples.length;
+				count = Math.min(count + 1, samples.length);
+			}
+		}
+
+		/**
+		 * Samples in the window, oldest first.
+		 */
+		public synchronized List<Sample> getSamples() {
+			var result = new ArrayList<Sample>(count);
+			var oldest = (next - count + samples.length) % samples.length;
+			for (int i = 0; i < count; i++) {
+				result.add(samples[(oldest + i) % samples.length]);
+			}
+			return result;
+		}
+
+		public synchronized Sample getLatest() {
+			if (count == 0) {
+				return null;
+			}
+			return samples[(next - 1 + samples.length) % samples.length];
+		}
+
+		@Override
+		public synchronized int getSampleCount() {
+			return count;
+		}
+
+		@Override
+		public double getStealRatePerSecond() {
+			var window = getSamples();
+			if (window.size() < 2) {
+				return 0.0;
+			}
+			var first = window.get(0);
+			var last = window.get(window.size() - 1);
+			var seconds = (last.timestampNanos - first.timestampNanos) / 1_000_000_000.0;
+			return seconds <= 0 ? 0.0 : (last.stealCount - first.stealCount) / seconds;
+		}
+
+		@Override
+		public double getUtilization() {
+			var window = getSamples();
+			if (window.isEmpty()) {
+				return 0.0;
+			}
+			var total = 0.0;
+			for (var sample : window) {
+				total += (double) sample.runningThreadCount / sample.parallelism;
+			}
+			return total / window.size();
+		}
+
+		// Latest values, read from the last sample so a JMX client doesn't touch the pool
+
+		@Override
+		public int getParallelism() {
+			var latest = getLatest();
+			return latest == null ? pool.getParallelism() : latest.parallelism;
+		}
+
+		@Override
+		public int getPoolSize() {
+			var latest = getLatest();
+			return latest == null ? 0 : latest.poolSize;
+		}
+
+		@Override
+		public int getActiveThreadCount() {
+			var latest = getLatest();
+			return latest == null ? 0 : latest.activeThreadCount;
+		}
+
+		@Override
+		public int getRunningThreadCount() {
+			var latest = getLatest();
+			return latest == null ? 0 : latest.runningThreadCount;
+		}
+
+		@Override
+		public int getQueuedSubmissionCount() {
+			var latest = getLatest();
+			return latest == null ? 0 : latest.queuedSubmissionCount;
+		}
+
+		@Override
+		public long getQueuedTaskCount() {
+			var latest = getLatest();
+			return latest == null ? 0 : latest.queuedTaskCount;
+		}
+
+		@Override
+		public long getStealCount() {
+			var latest = getLatest();
+			return latest == null ? 0 : latest.stealCount;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("steal rate %.1f/s, utilization %.0f%%, latest %s", getStealRatePerSecond(),
+					getUtilization() * 100, getLatest());
+		}
+	}
+
+	private final Map<String, PoolStats> pools = new ConcurrentHashMap<>();
+	private final int historySize;
+	private final ScheduledExecutorService scheduler;
+
+	public ForkJoinPoolMonitor(long period, TimeUnit unit, int historySize) {
+		if (historySize < 2) {
+			throw new IllegalArgumentException("History must keep at least 2 samples");
+		}
+		this.historySize = historySize;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			var thread = new Thread(runnable, "fork-join-pool-monitor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this::sampleAll, 0, period, unit);
+	}
+
+	public PoolStats register(String name, ForkJoinPool pool) {
+		var stats = new PoolStats(pool, historySize);
+		if (pools.putIfAbsent(name, stats) != null) {
+			throw new IllegalArgumentException("A pool named " + name + " is already registered");
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(stats, objectName(name));
+		} catch (JMException e) {
+			pools.remove(name);
+			throw new IllegalStateException("Could not expose pool " + name + " over JMX", e);
+		}
+		return stats;
+	}
+
+	public void unregister(String name) {
+		if (pools.remove(name) != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+			} catch (JMException e) {
+				// already gone
+			}
+		}
+	}
+
+	public PoolStats getStats(String name) {
+		return pools.get(name);
+	}
+
+	private void sampleAll() {
+		for (var stats : pools.values()) {
+			stats.sample();
+		}
+	}
+
+	private static ObjectName objectName(String name) throws JMException {
+		return new ObjectName(JMX_DOMAIN + ":type=ForkJoinPoolMonitor,name=" + ObjectName.quote(name));
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+		for (var name : new ArrayList<>(pools.keySet())) {
+			unregister(name);
+		}
+	}
+
+	/**
+	 * Samples a small pool every 100ms while it sums some numbers, then a pool
+	 * where every task blocks: its utilization collapses while tasks pile up.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		try (var monitor = new ForkJoinPoolMonitor(100, TimeUnit.MILLISECONDS, 50)) {
+			var cpuPool = new ForkJoinPool(4);
+			var blockedPool = new ForkJoinPool(4);
+			var cpuStats = monitor.register("cpu", cpuPool);
+			var blockedStats = monitor.register("blocked", blockedPool);
+
+			var span = UsingForkJoinFramework.Span.of(new int[50_000_000]);
+			for (int i = 0; i < 20; i++) {
+				cpuPool.submit(new UsingForkJoinFramework.SpanSumTask(span));
+				blockedPool.submit(new RecursiveTask<Void>() {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected Void compute() {
+						try {
+							Thread.sleep(1000);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+						return null;
+					}
+				});
+			}
+
+			for (int i = 0; i < 5; i++) {
+				Thread.sleep(500);
+				System.out.println("cpu:     " + cpuStats);
+				System.out.println("blocked: " + blockedStats);
+				System.out.println();
+			}
+			cpuPool.shutdownNow();
+			blockedPool.shutdownNow();
+		}
+	}
+
+}
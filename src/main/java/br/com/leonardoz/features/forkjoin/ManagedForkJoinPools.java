@@ -0,0 +1,271 @@
+package br.com.leonardoz.features.forkjoin;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Managed and isolated ForkJoinPools
+ *
+ * Parallel streams and the default async stages of CompletableFuture all run
+ * in ForkJoinPool.commonPool(). One task blocking there (I/O, a lock, a
+ * sleep) holds a worker that unrelated work was counting on.
+ *
+ * This registry creates named pools, each with its own threads (named after
+ * the pool, so thread dumps show who is who), that can be looked up by name
+ * and shut down together.
+ *
+ * Blocking calls: ForkJoinPool#managedBlock tells the pool a worker is about
+ * to block, so it can start a spare thread and keep the parallelism level.
+ * The block helpers bellow wrap the usual blocking calls in a ManagedBlocker.
+ *
+ * Parallel streams in a specific pool: a parallel stream runs its tasks in
+ * the pool of the thread that starts it. Starting the terminal operation from
+ * a task of our pool keeps it out of the common pool (invokeIn).
+ *
+ */
+@ThreadSafe
+public class ManagedForkJoinPools implements AutoCloseable {
+
+	private final Map<String, ForkJoinPool> pools = new ConcurrentHashMap<>();
+	private final ForkJoinPoolMonitor monitor; // optional
+
+	public ManagedForkJoinPools() {
+		this(null);
+	}
+
+	/**
+	 * Every pool created is also registered in the monitor.
+	 */
+	public ManagedForkJoinPools(ForkJoinPoolMonitor monitor) {
+		this.monitor = monitor;
+	}
+
+	public ForkJoinPool create(String name, int parallelism) {
+		var created = new ForkJoinPool[1];
+		var pool = pools.computeIfAbsent(name, key -> {
+			created[0] = new ForkJoinPool(parallelism, namedThreadFactory(key), uncaughtExceptionLogger(), false);
+			return created[0];
+		});
+		if (created[0] == null) {
+			throw new IllegalArgumentException("A pool named " + name + " already exists");
+		}
+		if (monitor != null) {
+			try {
+				monitor.register(name, pool);
+			} catch (RuntimeException e) {
+				// no pool without its monitor
+				pools.remove(name, pool);
+				pool.shutdownNow();
+				throw e;
+			}
+		}
+		return pool;
+	}
+
+	public ForkJoinPool get(String name) {
+		var pool = pools.get(name);
+		if (pool == null) {
+			throw new IllegalArgumentException("No pool named " + name);
+		}
+		return pool;
+	}
+
+	public void shutdown(String name) {
+		var pool = pools.remove(name);
+		if (pool != null) {
+			pool.shutdown();
+			if (monitor != null) {
+				monitor.unregister(name);
+			}
+		}
+	}
+
+	/**
+	 * Shuts every pool down, waiting a little for running tasks.
+	 */
+	@Override
+	public void close() {
+		var names = pools.keySet().toArray(new String[0]);
+		for (var name : names) {
+			var pool = pools.get(name);
+			shutdown(name);
+			try {
+				if (pool != null && !pool.awaitTermination(5, TimeUnit.SECONDS)) {
+					pool.shutdownNow();
+				}
+			} catch (InterruptedException e) {
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Worker threads named poolName-worker-N.
+	 */
+	public static ForkJoinWorkerThreadFactory namedThreadFactory(String poolName) {
+		var counter = new AtomicInteger();
+		return pool -> {
+			var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName(poolName + "-worker-" + counter.incrementAndGet());
+			return thread;
+		};
+	}
+
+	private static Thread.UncaughtExceptionHandler uncaughtExceptionLogger() {
+		return (thread, error) -> {
+			System.err.println("Worker " + thread.getName() + " died:");
+			error.printStackTrace();
+		};
+	}
+
+	/**
+	 * Runs the supplier (usually a parallel stream pipeline) inside the pool, so
+	 * the stream's tasks use its workers instead of the common pool.
+	 */
+	public static <T> T invokeIn(ForkJoinPool pool, Supplier<T> pipeline) {
+		try {
+			return pool.submit(pipeline::get).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting the pipeline", e);
+		} catch (ExecutionException e) {
+			var cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Runs a blocking call as a ManagedBlocker. Outside of a ForkJoinPool it
+	 * just runs the call.
+	 */
+	public static <T> T block(Callable<T> blockingCall) throws Exception {
+		var blocker = new CallableBlocker<>(blockingCall);
+		ForkJoinPool.managedBlock(blocker);
+		return blocker.getResult();
+	}
+
+	/**
+	 * BlockingQueue#take as a ManagedBlocker: doesn't block at all if an element
+	 * is already there.
+	 */
+	public static <E> E take(BlockingQueue<E> queue) throws InterruptedException {
+		var blocker = new QueueTakeBlocker<>(queue);
+		ForkJoinPool.managedBlock(blocker);
+		return blocker.item;
+	}
+
+	private static final class CallableBlocker<T> implements ManagedBlocker {
+		private final Callable<T> call;
+		private boolean done;
+		private T result;
+		private Exception failure;
+
+		CallableBlocker(Callable<T> call) {
+			this.call = call;
+		}
+
+		@Override
+		public boolean block() {
+			try {
+				result = call.call();
+			} catch (Exception e) {
+				failure = e;
+			}
+			done = true;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+
+		T getResult() throws Exception {
+			if (failure != null) {
+				throw failure;
+			}
+			return result;
+		}
+	}
+
+	private static final class QueueTakeBlocker<E> implements ManagedBlocker {
+		private final BlockingQueue<E> queue;
+		private E item;
+
+		QueueTakeBlocker(BlockingQueue<E> queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public boolean block() throws InterruptedException {
+			if (item == null) {
+				item = queue.take();
+			}
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return item != null || (item = queue.poll()) != null;
+		}
+	}
+
+	/**
+	 * A blocking workload and a CPU-bound parallel stream, each in its own pool.
+	 * The blocking tasks use managedBlock, so their pool adds spare threads
+	 * instead of running them 2 at a time.
+	 */
+	public static void main(String[] args) throws Exception {
+		try (var pools = new ManagedForkJoinPools()) {
+			var cpu = pools.create("cpu", Runtime.getRuntime().availableProcessors());
+			var io = pools.create("io", 2);
+
+			var before = System.currentTimeMillis();
+			var sleepers = IntStream.range(0, 8)
+					.mapToObj(i -> io.submit(() -> block(() -> {
+						Thread.sleep(500);
+						return Thread.currentThread().getName();
+					})))
+					.collect(Collectors.toList());
+
+			var threads = invokeIn(cpu, () -> IntStream.range(0, 1_000)
+					.parallel()
+					.mapToObj(i -> Thread.currentThread().getName())
+					.collect(Collectors.toSet()));
+			System.out.println("Parallel stream ran on: " + threads);
+
+			for (var sleeper : sleepers) {
+				sleeper.get();
+			}
+			System.out.println("8 blocking tasks on a 2 thread pool took " + (System.currentTimeMillis() - before)
+					+ " ms (~500 thanks to managedBlock, ~2000 without)");
+
+			var queue = new LinkedBlockingQueue<String>();
+			var consumer = io.submit(() -> take(queue));
+			queue.put("message");
+			System.out.println("Consumer got: " + consumer.get());
+		}
+	}
+
+}
@@ -2,11 +2,14 @@ package br.com.leonardoz.features.forkjoin;
 
 import java.lang.Thread.UncaughtExceptionHandler;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
 
 /**
  * 
@@ -192,6 +195,137 @@ public class UsingForkJoinFramework {
 		}
 	}
 
+	/**
+	 * Random access spans
+	 * 
+	 * RecSumTask splits with subList. Over a LinkedList every subList call and
+	 * every leaf iteration has to walk the nodes from one of the ends, so the
+	 * cost of splitting grows with the size of the list.
+	 * 
+	 * A Span is an array, an offset and a length: splitting it is just
+	 * arithmetic, and leaves read the elements directly. Lists are copied into
+	 * an array once, up front, with a single sequential pass (an iterator, so
+	 * even a LinkedList costs O(n) only once).
+	 * 
+	 */
+	static final class Span {
+
+		private final int[] array;
+		private final int offset;
+		private final int length;
+
+		private Span(int[] array, int offset, int length) {
+			if (offset < 0 || length < 0 || offset + length > array.length) {
+				throw new IndexOutOfBoundsException(
+						"Span [" + offset + ", " + (offset + length) + ") out of array of " + array.length);
+			}
+			this.array = array;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		public static Span of(int[] array) {
+			return new Span(array, 0, array.length);
+		}
+
+		public static Span of(int[] array, int offset, int length) {
+			return new Span(array, offset, length);
+		}
+
+		public static Span copyOf(Collection<Integer> numbers) {
+			var array = new int[numbers.size()];
+			var i = 0;
+			for (Integer number : numbers) {
+				array[i++] = number;
+			}
+			return new Span(array, 0, array.length);
+		}
+
+		public int get(int index) {
+			return array[offset + index];
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public Span left() {
+			return new Span(array, offset, length / 2);
+		}
+
+		public Span right() {
+			return new Span(array, offset + length / 2, length - length / 2);
+		}
+
+	}
+
+	/**
+	 * Base of the tasks over spans: the split, fork and join logic lives here,
+	 * subclasses only solve a small span and combine two results. One half is
+	 * forked and the other is computed by the current thread.
+	 */
+	static abstract class SpanTask<R> extends RecursiveTask<R> {
+
+		private static final long serialVersionUID = 1L;
+		public static final int DIVIDE_AT = 500;
+
+		protected final Span span;
+
+		protected SpanTask(Span span) {
+			this.span = span;
+		}
+
+		protected abstract R computeDirectly();
+
+		protected abstract SpanTask<R> subTask(Span subSpan);
+
+		protected abstract R combine(R left, R right);
+
+		@Override
+		protected R compute() {
+			if (span.length() < DIVIDE_AT) {
+				return computeDirectly();
+			}
+			var left = subTask(span.left());
+			var right = subTask(span.right());
+			left.fork();
+			var rightResult = right.compute();
+			return combine(left.join(), rightResult);
+		}
+	}
+
+	/**
+	 * Same sum as RecSumTask, over a span. The leaf sums into a long (a span of
+	 * ints can't overflow it), creating a single BigInteger per leaf.
+	 */
+	static class SpanSumTask extends SpanTask<BigInteger> {
+
+		private static final long serialVersionUID = 1L;
+
+		public SpanSumTask(Span span) {
+			super(span);
+		}
+
+		@Override
+		protected BigInteger computeDirectly() {
+			long subSum = 0;
+			for (int i = 0; i < span.length(); i++) {
+				subSum += span.get(i);
+			}
+			return BigInteger.valueOf(subSum);
+		}
+
+		@Override
+		protected SpanTask<BigInteger> subTask(Span subSpan) {
+			return new SpanSumTask(subSpan);
+		}
+
+		@Override
+		protected BigInteger combine(BigInteger left, BigInteger right) {
+			return left.add(right);
+		}
+	}
+
 	public static void main(String[] args) {
 		// prepares dataset for the example
 		var numbers = new LinkedList<Integer>();
@@ -205,6 +339,24 @@ public class UsingForkJoinFramework {
 		BigInteger result = commonPool.invoke(task);
 		System.out.println("Result is: " + result);
 		System.out.println("\n\n");
+
+		// Dummy benchmark: subList splitting over a LinkedList and an ArrayList
+		// versus spans (counting the copy of the LinkedList)
+		var arrayList = new ArrayList<>(numbers);
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			timed("RecSumTask over LinkedList", () -> commonPool.invoke(new RecSumTask(numbers)));
+			timed("RecSumTask over ArrayList", () -> commonPool.invoke(new RecSumTask(arrayList)));
+			timed("SpanSumTask (copy included)", () -> commonPool.invoke(new SpanSumTask(Span.copyOf(numbers))));
+			System.out.println();
+		}
+	}
+
+	private static void timed(String name, Supplier<BigInteger> sum) {
+		var before = System.nanoTime();
+		var result = sum.get();
+		var after = System.nanoTime();
+		System.out.println(name + ": " + result + " in " + (after - before) / 1_000_000 + " ms");
 	}
 
 	/**
@@ -0,0 +1,231 @@
+package br.com.leonardoz.features.locks;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import br.com.leonardoz.patterns.GuardedBy;
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Append-optimized text guarded by a ReadWriteLock
+ *
+ * UsingExplicitReadWriteLocks#writeContent copies the whole content on every
+ * append, while holding the write lock: the bigger the content, the longer
+ * every writer holds the lock and every reader waits.
+ *
+ * Here the text is kept as a list of chunks of fixed size (a flat rope).
+ * Filled chunks are immutable Strings; only the last one, the tail, is still
+ * being written, and only past the length any reader has seen. An append copies
+ * just the appended characters, so the write lock is held for O(appended
+ * length), whatever the size of the content.
+ *
+ * A reader takes the read lock only to capture the chunk array, the tail and
+ * the lengths. Nothing in that range ever changes again (appends write past
+ * it, and a full tail is replaced, not reused), so the Snapshot is consistent
+ * and costs no copy, no matter how much is appended afterwards.
+ *
+ */
+@ThreadSafe
+public class ChunkedTextBuffer {
+
+	private static final int DEFAULT_CHUNK_SIZE = 8 * 1024;
+
+	private final ReadWriteLock lock;
+	private final int chunkSize;
+
+	@GuardedBy("lock")
+	private String[] chunks = new String[16];
+	@GuardedBy("lock")
+	private int chunkCount;
+	@GuardedBy("lock")
+	private char[] tail;
+	@GuardedBy("lock")
+	private int tailLength;
+
+	public ChunkedTextBuffer() {
+		this(new ReentrantReadWriteLock(), DEFAULT_CHUNK_SIZE);
+	}
+
+	public ChunkedTextBuffer(ReadWriteLock lock, int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive");
+		}
+		this.lock = lock;
+		this.chunkSize = chunkSize;
+		this.tail = new char[chunkSize];
+	}
+
+	public void append(CharSequence text) {
+		var writeLock = lock.writeLock();
+		writeLock.lock();
+		try {
+			var position = 0;
+			var length = text.length();
+			while (position < length) {
+				var count = Math.min(length - position, chunkSize - tailLength);
+				if (text instanceof String) {
+					((String) text).getChars(position, position + count, tail, tailLength);
+				} else {
+					for (int i = 0; i < count; i++) {
+						tail[tailLength + i] = text.charAt(position + i);
+					}
+				}
+				tailLength += count;
+				position += count;
+				if (tailLength == chunkSize) {
+					seal();
+				}
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@GuardedBy("lock")
+	private void seal() {
+		if (chunkCount == chunks.length) {
+			// a new array: snapshots keep using the old one
+			chunks = Arrays.copyOf(chunks, chunks.length * 2);
+		}
+		chunks[chunkCount++] = new String(tail);
+		tail = new char[chunkSize]; // the old tail may still be read by snapshots
+		tailLength = 0;
+	}
+
+	public Snapshot snapshot() {
+		var readLock = lock.readLock();
+		readLock.lock();
+		try {
+			return new Snapshot(chunks, chunkCount, tail, tailLength, chunkSize);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	public long length() {
+		var readLock = lock.readLock();
+		readLock.lock();
+		try {
+			return (long) chunkCount * chunkSize + tailLength;
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * The text at some instant. Immutable; safe to share between threads.
+	 */
+	public static final class Snapshot implements CharSequence {
+		private final String[] chunks;
+		private final int chunkCount;
+		private final char[] tail;
+		private final int tailLength;
+		private final int chunkSize;
+
+		private Snapshot(String[] chunks, int chunkCount, char[] tail, int tailLength, int chunkSize) {
+			this.chunks = chunks;
+			this.chunkCount = chunkCount;
+			this.tail = tail;
+			this.tailLength = tailLength;
+			this.chunkSize = chunkSize;
+		}
+
+		/*
+		 * CharSequence lengths are ints; texts longer than Integer.MAX_VALUE are
+		 * only reachable through longLength and appendTo.
+		 */
+		@Override
+		public int length() {
+			return (int) Math.min(Integer.MAX_VALUE, longLength());
+		}
+
+		public long longLength() {
+			return (long) chunkCount * chunkSize + tailLength;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index < 0 || index >= longLength()) {
+				throw new IndexOutOfBoundsException("Index " + index + " out of " + longLength());
+			}
+			var chunk = index / chunkSize;
+			var offset = index % chunkSize;
+			return chunk < chunkCount ? chunks[chunk].charAt(offset) : tail[offset];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > length() || start > end) {
+				throw new IndexOutOfBoundsException("Range " + start + "-" + end + " out of " + length());
+			}
+			var builder = new StringBuilder(end - start);
+			for (int i = start; i < end; i++) {
+				builder.append(charAt(i));
+			}
+			return builder.toString();
+		}
+
+		/*
+		 * Writes the text chunk by chunk, without building it in memory.
+		 */
+		public void appendTo(StringBuilder destination) {
+			for (int i = 0; i < chunkCount; i++) {
+				destination.append(chunks[i]);
+			}
+			destination.append(tail, 0, tailLength);
+		}
+
+		@Override
+		public String toString() {
+			var builder = new StringBuilder(length());
+			appendTo(builder);
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * Dummy benchmark: appends of 36 characters to contents of 1 KB, 1 MB and
+	 * 100 MB, copying the whole content as UsingExplicitReadWriteLocks does,
+	 * against the chunked buffer. Reports the average time the write lock is
+	 * held by each append.
+	 */
+	public static void main(String[] args) {
+		var append = "0123456789abcdef0123456789abcdef0123";
+		var sizes = new int[] { 1024, 1024 * 1024, 100 * 1024 * 1024 };
+		for (var size : sizes) {
+			var appends = size >= 100 * 1024 * 1024 ? 20 : 1_000;
+			var initial = "x".repeat(size);
+
+			var lock = new ReentrantReadWriteLock();
+			var content = initial;
+			var before = System.nanoTime();
+			for (int i = 0; i < appends; i++) {
+				lock.writeLock().lock();
+				try {
+					content = new StringBuilder().append(content).append(append).toString();
+				} finally {
+					lock.writeLock().unlock();
+				}
+			}
+			var copying = (System.nanoTime() - before) / appends;
+			var copiedLength = content.length();
+			content = null;
+
+			var buffer = new ChunkedTextBuffer();
+			buffer.append(initial);
+			var snapshot = buffer.snapshot();
+			before = System.nanoTime();
+			for (int i = 0; i < appends; i++) {
+				buffer.append(append);
+			}
+			var chunked = (System.nanoTime() - before) / appends;
+
+			System.out.println(String.format("%,d chars: copy %,d ns/append, chunked %,d ns/append", size, copying,
+					chunked));
+			System.out.println("  lengths " + copiedLength + " / " + buffer.length() + ", old snapshot still "
+					+ snapshot.longLength() + " chars");
+		}
+	}
+
+}
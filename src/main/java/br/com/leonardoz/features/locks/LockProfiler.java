@@ -0,0 +1,415 @@
+package br.com.leonardoz.features.locks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+import br.com.leonardoz.patterns.thread_safe.lock_split.LockSplit;
+import br.com.leonardoz.patterns.thread_safe.lock_split.OSToolConfiguration;
+
+/**
+ * Lock contention profiling
+ *
+ * Before splitting a lock (see the Lock Split pattern) it's worth knowing if it
+ * is really hot. ProfiledLock wraps any Lock and records, per lock name:
+ *
+ * Acquisitions: how many times it was taken.
+ *
+ * Contended acquisitions: how many of those found it held and had to wait.
+ *
+ * Wait time: how long threads waited to get it (zero when uncontended).
+ *
+ * Hold time: how long it stayed held, from the first lock to the last unlock
+ * of a thread (reentrant acquisitions are part of the outer one). Hold counts
+ * are kept per thread, so shared locks (e.g. a read lock) are measured per
+ * reader. Time spent in Condition#await is not counted as held: the hold ends
+ * when the thread starts waiting and a new one starts when it has the lock
+ * again.
+ *
+ * Times go to histograms with power-of-two buckets, cheap enough to be updated
+ * on every acquisition, and precise enough for percentiles within a factor of
+ * two. The profiler can print a report periodically, ranking locks by total
+ * wait time: the locks at the top are the ones worth splitting.
+ *
+ */
+@ThreadSafe
+public class LockProfiler implements AutoCloseable {
+
+	/**
+	 * Histogram of durations in nanoseconds; bucket i holds durations in
+	 * [2^(i-1), 2^i).
+	 */
+	@ThreadSafe
+	public static final class Histogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(64);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+
+		void record(long nanos) {
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+			count.increment();
+			totalNanos.add(nanos);
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getTotalNanos() {
+			return totalNanos.sum();
+		}
+
+		/**
+		 * Upper bound of the bucket holding the given percentile (0 to 100).
+		 */
+		public long percentileNanos(double percentile) {
+			var total = 0L;
+			for (int i = 0; i < 64; i++) {
+				total += buckets.get(i);
+			}
+			var target = (long) Math.ceil(total * percentile / 100);
+			var seen = 0L;
+			for (int i = 0; i < 64; i++) {
+				seen += buckets.get(i);
+				if (seen >= target && seen > 0) {
+					return i == 0 ? 0 : (1L << i) - 1;
+				}
+			}
+			return 0;
+		}
+	}
+
+	@ThreadSafe
+	public static final class LockStats {
+		private final String name;
+		private final LongAdder acquisitions = new LongAdder();
+		private final LongAdder contended = new LongAdder();
+		private final Histogram waits = new Histogram();
+		private final Histogram holds = new Histogram();
+
+		private LockStats(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getAcquisitions() {
+			return acquisitions.sum();
+		}
+
+		public long getContendedAcquisitions() {
+			return contended.sum();
+		}
+
+		public Histogram getWaits() {
+			return waits;
+		}
+
+		public Histogram getHolds() {
+			return holds;
+		}
+
+		@Override
+		public String toString() {
+			var count = getAcquisitions();
+			return String.format(
+					"%s: %d acquisitions, %d contended (%.1f%%), wait total %d us p50 %d ns p99 %d ns, hold p50 %d ns p99 %d ns",
+					name, count, getContendedAcquisitions(),
+					count == 0 ? 0.0 : 100.0 * getContendedAcquisitions() / count, waits.getTotalNanos() / 1000,
+					waits.percentileNanos(50), waits.percentileNanos(99), holds.percentileNanos(50),
+					holds.percentileNanos(99));
+		}
+	}
+
+	/**
+	 * A Lock that records its use in a LockStats. Can replace a ReentrantLock
+	 * anywhere the Lock interface is used.
+	 */
+	@ThreadSafe
+	public static final class ProfiledLock implements Lock {
+		private final Lock delegate;
+		private final LockStats stats;
+		private final ThreadLocal<Hold> hold = ThreadLocal.withInitial(Hold::new);
+
+		/*
+		 * How many times the current thread holds the lock, and since when.
+		 */
+		private static final class Hold {
+			int depth;
+			long since;
+		}
+
+		private ProfiledLock(Lock delegate, LockStats stats) {
+			this.delegate = delegate;
+			this.stats = stats;
+		}
+
+		@Override
+		public void lock() {
+			if (delegate.tryLock()) {
+				acquired(false, 0);
+				return;
+			}
+			var start = System.nanoTime();
+			delegate.lock();
+			acquired(true, System.nanoTime() - start);
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			if (delegate.tryLock()) {
+				acquired(false, 0);
+				return;
+			}
+			var start = System.nanoTime();
+			delegate.lockInterruptibly();
+			acquired(true, System.nanoTime() - start);
+		}
+
+		@Override
+		public boolean tryLock() {
+			if (delegate.tryLock()) {
+				acquired(false, 0);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			if (delegate.tryLock()) {
+				acquired(false, 0);
+				return true;
+			}
+			var start = System.nanoTime();
+			if (delegate.tryLock(time, unit)) {
+				acquired(true, System.nanoTime() - start);
+				return true;
+			}
+			stats.waits.record(System.nanoTime() - start); // waited in vain, still a cost
+			return false;
+		}
+
+		@Override
+		public void unlock() {
+			var hold = this.hold.get();
+			if (hold.depth > 0 && --hold.depth == 0) {
+				stats.holds.record(System.nanoTime() - hold.since);
+			}
+			delegate.unlock(); // throws if not held, as the delegate does
+		}
+
+		@Override
+		public Condition newCondition() {
+			return new ProfiledCondition(delegate.newCondition());
+		}
+
+		private void acquired(boolean contended, long waitNanos) {
+			var hold = this.hold.get();
+			if (hold.depth++ > 0) {
+				return; // reentrant, part of the outer acquisition
+			}
+			hold.since = System.nanoTime();
+			stats.acquisitions.increment();
+			if (contended) {
+				stats.contended.increment();
+			}
+			stats.waits.record(waitNanos);
+		}
+
+		/*
+		 * Before waiting on a condition: ends the hold and returns the hold count
+		 * to restore afterwards.
+		 */
+		private int release() {
+			var hold = this.hold.get();
+			var held = hold.depth;
+			if (held > 0) {
+				hold.depth = 0;
+				stats.holds.record(System.nanoTime() - hold.since);
+			}
+			return held;
+		}
+
+		private void reacquired(int held) {
+			if (held > 0) {
+				var hold = this.hold.get();
+				hold.depth = held;
+				hold.since = System.nanoTime();
+			}
+		}
+
+		private final class ProfiledCondition implements Condition {
+			private final Condition condition;
+
+			private ProfiledCondition(Condition condition) {
+				this.condition = condition;
+			}
+
+			@Override
+			public void await() throws InterruptedException {
+				var held = release();
+				try {
+					condition.await();
+				} finally {
+					reacquired(held);
+				}
+			}
+
+			@Override
+			public void awaitUninterruptibly() {
+				var held = release();
+				try {
+					condition.awaitUninterruptibly();
+				} finally {
+					reacquired(held);
+				}
+			}
+
+			@Override
+			public long awaitNanos(long nanosTimeout) throws InterruptedException {
+				var held = release();
+				try {
+					return condition.awaitNanos(nanosTimeout);
+				} finally {
+					reacquired(held);
+				}
+			}
+
+			@Override
+			public boolean await(long time, TimeUnit unit) throws InterruptedException {
+				var held = release();
+				try {
+					return condition.await(time, unit);
+				} finally {
+					reacquired(held);
+				}
+			}
+
+			@Override
+			public boolean awaitUntil(Date deadline) throws InterruptedException {
+				var held = release();
+				try {
+					return condition.awaitUntil(deadline);
+				} finally {
+					reacquired(held);
+				}
+			}
+
+			@Override
+			public void signal() {
+				condition.signal();
+			}
+
+			@Override
+			public void signalAll() {
+				condition.signalAll();
+			}
+		}
+
+		public LockStats getStats() {
+			return stats;
+		}
+	}
+
+	private final Map<String, LockStats> locks = new ConcurrentHashMap<>();
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		var thread = new Thread(runnable, "lock-profiler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * A profiled ReentrantLock. Locks with the same name share their stats.
+	 */
+	public Lock newLock(String name) {
+		return wrap(name, new ReentrantLock());
+	}
+
+	public Lock wrap(String name, Lock lock) {
+		return new ProfiledLock(lock, locks.computeIfAbsent(name, LockStats::new));
+	}
+
+	public LockStats getStats(String name) {
+		return locks.get(name);
+	}
+
+	/**
+	 * Stats of every lock, the one with the longest total wait first.
+	 */
+	public List<LockStats> ranking() {
+		var ranking = new ArrayList<>(locks.values());
+		ranking.sort(Comparator.comparingLong((LockStats stats) -> stats.waits.getTotalNanos()).reversed());
+		return ranking;
+	}
+
+	public String report() {
+		var report = new StringBuilder("Locks by total wait:");
+		var position = 1;
+		for (var stats : ranking()) {
+			report.append(System.lineSeparator()).append(position++).append(". ").append(stats);
+		}
+		return report.toString();
+	}
+
+	public void reportEvery(long period, TimeUnit unit, Consumer<String> output) {
+		scheduler.scheduleAtFixedRate(() -> output.accept(report()), period, period, unit);
+	}
+
+	@Override
+	public void close() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Profiles the four locks of an OSToolConfiguration (many threads reading
+	 * the tool name, a few changing the user and one changing the password) and
+	 * the locks of a LockSplit, whose other state is read by the same threads.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		try (var profiler = new LockProfiler()) {
+			var configuration = new OSToolConfiguration(name -> profiler.newLock("OSToolConfiguration." + name));
+			var lockSplit = new LockSplit(name -> profiler.newLock("LockSplit." + name));
+			profiler.reportEvery(500, TimeUnit.MILLISECONDS, report -> System.out.println(report + "\n"));
+
+			var threads = 8;
+			var done = new CountDownLatch(threads);
+			for (int t = 0; t < threads; t++) {
+				var role = t;
+				new Thread(() -> {
+					for (int i = 0; i < 1_000_000; i++) {
+						if (role == 0) {
+							configuration.setPassword("password" + i);
+							lockSplit.anotherStateWriterMethod(i);
+						} else if (role < 3) {
+							configuration.setUser("user" + i);
+						} else {
+							configuration.getToolName();
+							lockSplit.otherStateReader();
+						}
+					}
+					done.countDown();
+				}).start();
+			}
+			done.await();
+			System.out.println("Final " + profiler.report());
+		}
+	}
+
+}
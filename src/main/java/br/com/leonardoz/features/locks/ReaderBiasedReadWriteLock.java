@@ -0,0 +1,403 @@
+package br.com.leonardoz.features.locks;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * A read-mostly ReadWriteLock (after BRAVO, "Biased Locking for Reader-Writer
+ * Locks")
+ *
+ * In a ReentrantReadWriteLock every reader does a CAS on the same state word to
+ * count itself, so even with no writer at all the readers keep stealing that
+ * cache line from each other, and read throughput stops growing after a few
+ * cores.
+ *
+ * Here, while the lock is read-biased, a reader announces itself in one slot of
+ * a table chosen by its thread (each slot on its own cache line), so readers on
+ * different cores write to different memory. The ReentrantReadWriteLock is
+ * only the slow path.
+ *
+ * A writer takes the underlying write lock, turns the bias off (revocation)
+ * and waits until every slot is empty. Revocation is expensive, so the bias
+ * stays off for a while, proportional to how long the revocation took; after
+ * that, a reader on the slow path turns it on again. Writers don't starve
+ * readers and frequent writers don't pay for revocations all the time.
+ *
+ * Reads are reentrant; a reader can't upgrade to the write lock. Readers whose
+ * slot is taken by another thread use the slow path.
+ *
+ */
+@ThreadSafe
+public class ReaderBiasedReadWriteLock implements ReadWriteLock {
+
+	private static final int STRIDE = 16; // 16 references of at most 4 bytes or more: 64 bytes apart
+	private static final long INHIBIT_MULTIPLIER = 9;
+
+	private final ReentrantReadWriteLock underlying = new ReentrantReadWriteLock();
+	private final AtomicReferenceArray<Thread> visibleReaders;
+	private final int slotMask;
+	private final ThreadLocal<int[]> fastHolds = ThreadLocal.withInitial(() -> new int[1]);
+
+	private volatile boolean readBias = true;
+	private volatile long inhibitUntil;
+
+	private final ReadLock readLock = new ReadLock();
+	private final WriteLock writeLock = new WriteLock();
+
+	public ReaderBiasedReadWriteLock() {
+		this(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public ReaderBiasedReadWriteLock(int slots) {
+		var size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+		this.slotMask = size - 1;
+		this.visibleReaders = new AtomicReferenceArray<>(size * STRIDE);
+	}
+
+	@Override
+	public Lock readLock() {
+		return readLock;
+	}
+
+	@Override
+	public Lock writeLock() {
+		return writeLock;
+	}
+
+	private int slotOf(Thread thread) {
+		var hash = Long.hashCode(thread.getId() * 0x9E3779B97F4A7C15L);
+		return (hash & slotMask) * STRIDE;
+	}
+
+	/*
+	 * The fast path. The reader first takes its slot and only then checks the
+	 * bias, while a writer turns the bias off and only then checks the slots:
+	 * with volatile accesses on both sides, at least one of them sees the other.
+	 */
+	private boolean tryFastRead() {
+		var me = Thread.currentThread();
+		var slot = slotOf(me);
+		var holds = fastHolds.get();
+		if (visibleReaders.get(slot) == me) {
+			holds[0]++; // reentrant; a writer is waiting for this slot anyway
+			return true;
+		}
+		if (readBias && visibleReaders.compareAndSet(slot, null, me)) {
+			if (readBias) {
+				holds[0] = 1;
+				return true;
+			}
+			visibleReaders.set(slot, null); // revoked in the meantime
+		}
+		return false;
+	}
+
+	private void afterSlowRead() {
+		// the write lock can only be held here by this same thread (downgrading)
+		if (!readBias && System.nanoTime() - inhibitUntil >= 0 && !underlying.isWriteLocked()) {
+			readBias = true;
+		}
+	}
+
+	private void revokeBias() {
+		revokeBias(false, 0);
+	}
+
+	/*
+	 * With a deadline, gives up if readers are still inside when it passes:
+	 * the bias is turned on again, since "off" must mean that no reader is on
+	 * the fast path, and false is returned.
+	 */
+	private boolean revokeBias(boolean timed, long deadline) {
+		if (!readBias) {
+			return true;
+		}
+		readBias = false;
+		var start = System.nanoTime();
+		for (int slot = 0; slot < visibleReaders.length(); slot += STRIDE) {
+			while (visibleReaders.get(slot) != null) {
+				if (timed && System.nanoTime() - deadline >= 0) {
+					readBias = true;
+					return false;
+				}
+				Thread.onSpinWait();
+				Thread.yield();
+			}
+		}
+		var now = System.nanoTime();
+		inhibitUntil = now + (now - start) * INHIBIT_MULTIPLIER;
+		return true;
+	}
+
+	public boolean isReadBiased() {
+		return readBias;
+	}
+
+	private final class ReadLock implements Lock {
+
+		@Override
+		public void lock() {
+			if (!tryFastRead()) {
+				underlying.readLock().lock();
+				afterSlowRead();
+			}
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			if (!tryFastRead()) {
+				underlying.readLock().lockInterruptibly();
+				afterSlowRead();
+			}
+		}
+
+		@Override
+		public boolean tryLock() {
+			if (tryFastRead()) {
+				return true;
+			}
+			if (underlying.readLock().tryLock()) {
+				afterSlowRead();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			if (tryFastRead()) {
+				return true;
+			}
+			if (underlying.readLock().tryLock(time, unit)) {
+				afterSlowRead();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public void unlock() {
+			var holds = fastHolds.get();
+			if (holds[0] > 0) {
+				if (--holds[0] == 0) {
+					visibleReaders.set(slotOf(Thread.currentThread()), null);
+				}
+			} else {
+				underlying.readLock().unlock();
+			}
+		}
+
+		@Override
+		public Condition newCondition() {
+			throw new UnsupportedOperationException("Read locks don't support conditions");
+		}
+	}
+
+	/*
+	 * Once the underlying write lock is held, revocation waits only for readers
+	 * already inside: no new reader can take the fast path.
+	 */
+	private final class WriteLock implements Lock {
+
+		@Override
+		public void lock() {
+			underlying.writeLock().lock();
+			revokeBias();
+		}
+
+		@Override
+		public void lockInterruptibly() throws InterruptedException {
+			underlying.writeLock().lockInterruptibly();
+			revokeBias();
+		}
+
+		@Override
+		public boolean tryLock() {
+			if (underlying.writeLock().tryLock()) {
+				revokeBias();
+				return true;
+			}
+			return false;
+		}
+
+		/*
+		 * The timeout covers the revocation too: if readers are still inside at
+		 * the deadline, the write lock is released again.
+		 */
+		@Override
+		public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+			var deadline = System.nanoTime() + unit.toNanos(time);
+			if (!underlying.writeLock().tryLock(time, unit)) {
+				return false;
+			}
+			if (revokeBias(true, deadline)) {
+				return true;
+			}
+			underlying.writeLock().unlock();
+			return false;
+		}
+
+		@Override
+		public void unlock() {
+			underlying.writeLock().unlock();
+		}
+
+		/*
+		 * await releases the write lock, and meanwhile readers may turn the bias
+		 * on again: every await revokes it once the write lock is held again.
+		 */
+		@Override
+		public Condition newCondition() {
+			return new WriteCondition(underlying.writeLock().newCondition());
+		}
+	}
+
+	private final class WriteCondition implements Condition {
+		private final Condition condition;
+
+		private WriteCondition(Condition condition) {
+			this.condition = condition;
+		}
+
+		private void reacquired() {
+			if (underlying.isWriteLockedByCurrentThread()) { // not when await refused to wait
+				revokeBias();
+			}
+		}
+
+		@Override
+		public void await() throws InterruptedException {
+			try {
+				condition.await();
+			} finally {
+				reacquired();
+			}
+		}
+
+		@Override
+		public void awaitUninterruptibly() {
+			try {
+				condition.awaitUninterruptibly();
+			} finally {
+				reacquired();
+			}
+		}
+
+		@Override
+		public long awaitNanos(long nanosTimeout) throws InterruptedException {
+			try {
+				return condition.awaitNanos(nanosTimeout);
+			} finally {
+				reacquired();
+			}
+		}
+
+		@Override
+		public boolean await(long time, TimeUnit unit) throws InterruptedException {
+			try {
+				return condition.await(time, unit);
+			} finally {
+				reacquired();
+			}
+		}
+
+		@Override
+		public boolean awaitUntil(Date deadline) throws InterruptedException {
+			try {
+				return condition.awaitUntil(deadline);
+			} finally {
+				reacquired();
+			}
+		}
+
+		@Override
+		public void signal() {
+			condition.signal();
+		}
+
+		@Override
+		public void signalAll() {
+			condition.signalAll();
+		}
+	}
+
+	/**
+	 * Dummy benchmark: reads per second from 1 thread to all the processors,
+	 * without writers and with one writer every millisecond, against
+	 * ReentrantReadWriteLock.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var processors = Runtime.getRuntime().availableProcessors();
+		for (int round = 1; round <= 2; round++) {
+			System.out.println("#### Round " + round);
+			for (int threads = 1; threads <= processors; threads = threads == processors ? threads + 1
+					: Math.min(threads * 2, processors)) {
+				for (var writer : new boolean[] { false, true }) {
+					run("ReentrantReadWriteLock", new ReentrantReadWriteLock(), threads, writer);
+					run("ReaderBiasedReadWriteLock", new ReaderBiasedReadWriteLock(), threads, writer);
+				}
+			}
+			System.out.println();
+		}
+	}
+
+	private static volatile long sink;
+
+	private static void run(String name, ReadWriteLock lock, int threads, boolean withWriter)
+			throws InterruptedException {
+		var durationMillis = 300;
+		var content = new String[] { "A long default content......" };
+		var stop = new AtomicBoolean();
+		var reads = new LongAdder();
+		var done = new CountDownLatch(threads + (withWriter ? 1 : 0));
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				var count = 0L;
+				var length = 0L;
+				while (!stop.get()) {
+					lock.readLock().lock();
+					try {
+						length += content[0].length();
+					} finally {
+						lock.readLock().unlock();
+					}
+					count++;
+				}
+				reads.add(count);
+				sink = length; // keeps the reads from being dropped
+				done.countDown();
+			}).start();
+		}
+		if (withWriter) {
+			new Thread(() -> {
+				for (int i = 0; !stop.get(); i++) {
+					lock.writeLock().lock();
+					try {
+						content[0] = "content " + i;
+					} finally {
+						lock.writeLock().unlock();
+					}
+					LockSupport.parkNanos(1_000_000);
+				}
+				done.countDown();
+			}).start();
+		}
+		Thread.sleep(durationMillis);
+		stop.set(true);
+		done.await();
+		System.out.println(name + ": " + threads + " reader(s)" + (withWriter ? " + 1 writer" : "") + ", "
+				+ reads.sum() * 1000 / durationMillis + " reads/s");
+	}
+
+}
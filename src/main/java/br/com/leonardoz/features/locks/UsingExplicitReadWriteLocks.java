@@ -3,9 +3,9 @@ package br.com.leonardoz.features.locks;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 /**
  * 
@@ -29,20 +29,31 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
  * false: Unfair lock: if the lock is held, requesting threads can 'jump' the
  * waiting queue (default, specially for write lock).
  * 
+ * Any ReadWriteLock can be used the same way; for read-mostly state see
+ * ReaderBiasedReadWriteLock.
+ * 
  */
 public class UsingExplicitReadWriteLocks {
 
 	// Equivalent to Intrinsic Locks
-	private ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+	private final ReadWriteLock readWriteLock;
 	private String myContent = "A long default content......";
 
+	public UsingExplicitReadWriteLocks() {
+		this(new ReentrantReadWriteLock());
+	}
+
+	public UsingExplicitReadWriteLocks(ReadWriteLock readWriteLock) {
+		this.readWriteLock = readWriteLock;
+	}
+
 	/**
 	 * Simplest way to use the read mode
 	 * 
 	 * @return
 	 */
 	public String showContent() {
-		ReadLock readLock = readWriteLock.readLock();
+		Lock readLock = readWriteLock.readLock();
 		readLock.lock();
 		try {
 			System.out.println("Reading state while holding a lock.");
@@ -53,7 +64,7 @@ public class UsingExplicitReadWriteLocks {
 	}
 
 	public void writeContent(String newContentToAppend) {
-		WriteLock writeLock = readWriteLock.writeLock();
+		Lock writeLock = readWriteLock.writeLock();
 		writeLock.lock();
 		try {
 			System.err.println("Writing " + newContentToAppend);
@@ -0,0 +1,152 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import br.com.leonardoz.patterns.divideconquer.ParallelDivideAndConquer.Range;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Adaptive split threshold
+ *
+ * A fixed threshold is tuned for one machine and one workload. This policy
+ * looks at the pool while the computation runs instead:
+ *
+ * - Pieces bigger than totalSize / (parallelism * LEAVES_PER_THREAD) are always
+ * split, so every thread gets some work to steal from the start.
+ *
+ * - Below that, a piece is split only while the current worker has few
+ * surplus tasks queued (ForkJoinTask#getSurplusQueuedTaskCount). A high
+ * surplus means nobody is stealing, so more splitting would only add
+ * overhead.
+ *
+ * - Pieces smaller than minLeafSize are never split. The calibration mode
+ * measures how long a leaf takes per element and picks minLeafSize so that
+ * every leaf runs long enough to pay the cost of a task.
+ */
+public class AdaptiveSplitPolicy implements SplitPolicy {
+
+	private static final int LEAVES_PER_THREAD = 4;
+	private static final int MAX_SURPLUS = 3;
+	private static final int DEFAULT_MIN_LEAF_SIZE = 1_000;
+	private static final long TARGET_LEAF_NANOS = 50_000; // ~50us per leaf
+
+	private final int minLeafSize;
+
+	public AdaptiveSplitPolicy() {
+		this(DEFAULT_MIN_LEAF_SIZE);
+	}
+
+	public AdaptiveSplitPolicy(int minLeafSize) {
+		if (minLeafSize < 1) {
+			throw new IllegalArgumentException("Minimum leaf size must be positive");
+		}
+		this.minLeafSize = minLeafSize;
+	}
+
+	public int getMinLeafSize() {
+		return minLeafSize;
+	}
+
+	@Override
+	public boolean shouldSplit(long size, long totalSize) {
+		if (size <= minLeafSize) {
+			return false;
+		}
+		if (!ForkJoinTask.inForkJoinPool()) {
+			return true;
+		}
+		var parallelism = ForkJoinTask.getPool().getParallelism();
+		if (parallelism == 1) {
+			return false; // no one to share the work with
+		}
+		if (size > totalSize / (parallelism * LEAVES_PER_THREAD)) {
+			return true;
+		}
+		return ForkJoinTask.getSurplusQueuedTaskCount() <= MAX_SURPLUS;
+	}
+
+	/*
+	 * Calibration mode: runs the leaf over a sample range a few times (letting
+	 * the JIT warm it), measures the cost per element and sizes the leaves to
+	 * take around TARGET_LEAF_NANOS.
+	 */
+	public static AdaptiveSplitPolicy calibrate(Function<? super Range, ?> leafFn, Range sample) {
+		if (sample.size() == 0) {
+			throw new IllegalArgumentException("Sample range can't be empty");
+		}
+		var best = Long.MAX_VALUE;
+		for (int i = 0; i < 20; i++) {
+			var before = System.nanoTime();
+			leafFn.apply(sample);
+			best = Math.min(best, System.nanoTime() - before);
+		}
+		var nanosPerElement = Math.max(1.0, (double) best / sample.size());
+		var minLeafSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE, TARGET_LEAF_NANOS / nanosPerElement));
+		return new AdaptiveSplitPolicy(minLeafSize);
+	}
+
+	@Override
+	public String toString() {
+		return "Adaptive(minLeafSize=" + minLeafSize + ")";
+	}
+
+	/*
+	 * Dummy benchmark comparing the thresholds hardcoded in this project (10,
+	 * 500 and 10_000) against the adaptive policy, with 1, 4 and all cores, for
+	 * a cheap leaf (sum) and an expensive one (some math per element). Run on
+	 * your machine, the numbers depend on it.
+	 */
+	public static void main(String[] args) {
+		var nums = LongStream.range(0, 20_000_000L).toArray();
+		Function<Range, Long> cheap = range -> {
+			long acc = 0;
+			for (int i = range.from(); i < range.to(); i++) {
+				acc += nums[i];
+			}
+			return acc;
+		};
+		Function<Range, Long> expensive = range -> {
+			long acc = 0;
+			for (int i = range.from(); i < range.to(); i++) {
+				acc += (long) Math.sqrt(Math.abs(Math.sin(nums[i]) * nums[i]));
+			}
+			return acc;
+		};
+
+		var cores = Runtime.getRuntime().availableProcessors();
+		for (var parallelism : IntStream.of(1, Math.min(4, cores), cores).distinct().toArray()) {
+			var pool = new ForkJoinPool(parallelism);
+			try {
+				System.out.println("#### Parallelism " + parallelism + "\n");
+				run(pool, nums.length, "cheap", cheap);
+				run(pool, nums.length / 10, "expensive", expensive);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	private static void run(ForkJoinPool pool, int size, String name, Function<Range, Long> leaf) {
+		var policies = new SplitPolicy[] { SplitPolicy.fixed(10), SplitPolicy.fixed(500), SplitPolicy.fixed(10_000),
+				SplitPolicy.adaptive(), calibrate(leaf, Range.of(0, Math.min(size, 100_000))) };
+		var labels = new String[] { "Fixed(10)", "Fixed(500)", "Fixed(10_000)", "Adaptive",
+				"Calibrated " + policies[4] };
+		for (int i = 0; i < policies.length; i++) {
+			var policy = policies[i];
+			var best = Long.MAX_VALUE;
+			for (int round = 0; round < 5; round++) {
+				var before = System.nanoTime();
+				ParallelDivideAndConquer.reduce(pool, Range.of(0, size), 0L, leaf, Long::sum, policy);
+				best = Math.min(best, System.nanoTime() - before);
+			}
+			System.out.println(name + " - " + labels[i] + ": best of 5 in " + best / 1_000_000.0 + " ms");
+		}
+		System.out.println();
+	}
+
+}
@@ -0,0 +1,187 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+import java.math.BigInteger;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Primitive Parallel Sum
+ *
+ * Same idea as ParallelSum, but working over a long[] (or a LongBuffer) using
+ * index ranges instead of subList. No element is boxed, so the time goes to
+ * the arithmetic and not to allocation and pointer chasing.
+ *
+ * The partial sums are kept as a primitive long and are only promoted to
+ * BigInteger when an addition actually overflows.
+ */
+public class LongParallelSum extends RecursiveTask<LongParallelSum.PartialSum> {
+
+	private static final long serialVersionUID = 1L;
+	private final static int THRESHOLD = 10_000; // Choosing a number to split the computation
+
+	private final LongBuffer nums;
+	private final int from;
+	private final int to;
+
+	public LongParallelSum(long[] nums) {
+		this(LongBuffer.wrap(nums));
+	}
+
+	public LongParallelSum(LongBuffer nums) {
+		this(nums, nums.position(), nums.limit());
+	}
+
+	private LongParallelSum(LongBuffer nums, int from, int to) {
+		this.nums = nums;
+		this.from = from;
+		this.to = to;
+	}
+
+	/*
+	 * Result of a (partial) sum: a plain long while it fits, and a BigInteger
+	 * only after some addition has overflowed.
+	 */
+	public static final class PartialSum {
+
+		static final PartialSum ZERO = new PartialSum(0L, null);
+
+		private final long small;
+		private final BigInteger big;
+
+		private PartialSum(long small, BigInteger big) {
+			this.small = small;
+			this.big = big;
+		}
+
+		public boolean isOverflowed() {
+			return big != null;
+		}
+
+		public BigInteger toBigInteger() {
+			return big != null ? big : BigInteger.valueOf(small);
+		}
+
+		public PartialSum add(PartialSum other) {
+			if (big == null && other.big == null) {
+				var result = small + other.small;
+				if (!overflowed(small, other.small, result)) {
+					return new PartialSum(result, null);
+				}
+			}
+			return new PartialSum(0L, toBigInteger().add(other.toBigInteger()));
+		}
+
+		@Override
+		public String toString() {
+			return toBigInteger().toString();
+		}
+	}
+
+	@Override
+	protected PartialSum compute() {
+		var size = to - from;
+		if (size < THRESHOLD) {
+			return sequentialSum(nums, from, to);
+		} else {
+			var middle = from + size / 2;
+			var x = new LongParallelSum(nums, from, middle);
+			var y = new LongParallelSum(nums, middle, to);
+			x.fork(); // fork one half...
+			var yResult = y.compute(); // ...and compute the other in this thread
+			var xResult = x.join();
+			return xResult.add(yResult);
+		}
+	}
+
+	public static PartialSum sequentialSum(LongBuffer nums, int from, int to) {
+		if (nums.hasArray()) {
+			var offset = nums.arrayOffset();
+			return sequentialSum(nums.array(), offset + from, offset + to);
+		}
+		long acc = 0;
+		BigInteger big = null;
+		for (int i = from; i < to; i++) {
+			var value = nums.get(i);
+			var result = acc + value;
+			if (overflowed(acc, value, result)) {
+				// flushes the accumulator, only on the rare overflow case
+				big = (big == null ? BigInteger.valueOf(acc) : big.add(BigInteger.valueOf(acc)));
+				result = value;
+			}
+			acc = result;
+		}
+		return big == null ? new PartialSum(acc, null) : new PartialSum(0L, big.add(BigInteger.valueOf(acc)));
+	}
+
+	public static PartialSum sequentialSum(long[] nums, int from, int to) {
+		long acc = 0;
+		BigInteger big = null;
+		for (int i = from; i < to; i++) {
+			var value = nums[i];
+			var result = acc + value;
+			if (overflowed(acc, value, result)) {
+				big = (big == null ? BigInteger.valueOf(acc) : big.add(BigInteger.valueOf(acc)));
+				result = value;
+			}
+			acc = result;
+		}
+		return big == null ? new PartialSum(acc, null) : new PartialSum(0L, big.add(BigInteger.valueOf(acc)));
+	}
+
+	/*
+	 * Same check used by Math.addExact: the result has a different sign than
+	 * both operands.
+	 */
+	static boolean overflowed(long x, long y, long result) {
+		return ((x ^ result) & (y ^ result)) < 0;
+	}
+
+	/*
+	 * Compares with the boxed ParallelSum over the same values. Same dummy
+	 * benchmark, same advice: run on your machine and don't take it seriously.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var primitives = LongStream.range(0, 10_000_000L).toArray();
+		var boxed = LongStream.range(0, 10_000_000L)
+				.mapToObj(BigInteger::valueOf)
+				.collect(Collectors.toList());
+		var commonPool = ForkJoinPool.commonPool();
+
+		Runnable boxedParallel = () -> {
+			var result = commonPool.invoke(new ParallelSum(boxed));
+			System.out.println("Boxed Parallel Result is: " + result);
+		};
+
+		Runnable primitiveParallel = () -> {
+			var result = commonPool.invoke(new LongParallelSum(primitives));
+			System.out.println("Primitive Parallel Result is: " + result);
+		};
+
+		Runnable primitiveSequential = () -> {
+			var result = sequentialSum(primitives, 0, primitives.length);
+			System.out.println("Primitive Sequential Result is: " + result);
+		};
+
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round + "\n\n");
+			ParallelSum.dummyBenchmark(boxedParallel);
+			ParallelSum.dummyBenchmark(primitiveSequential);
+			ParallelSum.dummyBenchmark(primitiveParallel);
+			Thread.sleep(1000);
+		}
+
+		// Overflow only promotes the partial sums that need it
+		var huge = new long[100_000];
+		Arrays.fill(huge, Long.MAX_VALUE);
+		var hugeResult = commonPool.invoke(new LongParallelSum(huge));
+		System.out.println("Overflowed: " + hugeResult.isOverflowed() + " Result is: " + hugeResult
+				+ " Expected: " + BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.valueOf(huge.length)));
+	}
+
+}
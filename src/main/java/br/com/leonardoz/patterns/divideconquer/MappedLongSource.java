@@ -0,0 +1,163 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BinaryOperator;
+
+import br.com.leonardoz.patterns.divideconquer.LongParallelSum.PartialSum;
+import br.com.leonardoz.patterns.divideconquer.ParallelDivideAndConquer.Splittable;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Memory-mapped file as a divide and conquer source
+ *
+ * A binary file of longs is mapped with FileChannel#map and split like any
+ * other range, so the leaves read straight from the page cache: no list to
+ * load first and no per-element allocation.
+ *
+ * A single MappedByteBuffer can't be bigger than 2 GB, so the file is mapped
+ * as a sequence of chunks; a range may cross from one chunk to the next.
+ * Splitting never touches the data, it only creates a new range over the
+ * same chunks.
+ */
+public final class MappedLongSource implements Splittable<MappedLongSource> {
+
+	private static final long MAX_CHUNK_BYTES = 1L << 30; // 1 GB, multiple of Long.BYTES
+
+	/*
+	 * Work done by a leaf over chunk[from, to), indexes relative to the chunk.
+	 */
+	public interface ChunkFunction<R> {
+		R apply(LongBuffer chunk, int from, int to);
+	}
+
+	private final LongBuffer[] chunks;
+	private final int chunkElements;
+	private final long from;
+	private final long to;
+
+	private MappedLongSource(LongBuffer[] chunks, int chunkElements, long from, long to) {
+		this.chunks = chunks;
+		this.chunkElements = chunkElements;
+		this.from = from;
+		this.to = to;
+	}
+
+	public static MappedLongSource map(Path file, ByteOrder order) throws IOException {
+		return map(file, order, MAX_CHUNK_BYTES);
+	}
+
+	static MappedLongSource map(Path file, ByteOrder order, long chunkBytes) throws IOException {
+		if (chunkBytes <= 0 || chunkBytes % Long.BYTES != 0 || chunkBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Chunk size must be a positive multiple of 8 up to 2 GB");
+		}
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			var elements = channel.size() / Long.BYTES; // trailing bytes, if any, are ignored
+			var chunkElements = (int) (chunkBytes / Long.BYTES);
+			var chunkCount = (int) ((elements + chunkElements - 1) / chunkElements);
+			var chunks = new LongBuffer[chunkCount];
+			for (int i = 0; i < chunkCount; i++) {
+				var position = (long) i * chunkElements;
+				var length = Math.min(chunkElements, elements - position);
+				// the mapping stays valid after the channel is closed
+				chunks[i] = channel.map(MapMode.READ_ONLY, position * Long.BYTES, length * Long.BYTES)
+						.order(order)
+						.asLongBuffer();
+			}
+			return new MappedLongSource(chunks, chunkElements, 0, elements);
+		}
+	}
+
+	@Override
+	public long size() {
+		return to - from;
+	}
+
+	@Override
+	public MappedLongSource left() {
+		return new MappedLongSource(chunks, chunkElements, from, from + size() / 2);
+	}
+
+	@Override
+	public MappedLongSource right() {
+		return new MappedLongSource(chunks, chunkElements, from + size() / 2, to);
+	}
+
+	public long get(long index) {
+		if (index < from || index >= to) {
+			throw new IndexOutOfBoundsException("Index " + index + " out of [" + from + ", " + to + ")");
+		}
+		return chunks[(int) (index / chunkElements)].get((int) (index % chunkElements));
+	}
+
+	/*
+	 * Applies the function to every chunk piece of this range (usually one, two
+	 * when the range crosses a chunk boundary) and combines the results.
+	 */
+	public <R> R reduceChunks(R identity, ChunkFunction<R> fn, BinaryOperator<R> combineFn) {
+		var result = identity;
+		var position = from;
+		while (position < to) {
+			var chunk = (int) (position / chunkElements);
+			var chunkStart = (long) chunk * chunkElements;
+			var pieceEnd = Math.min(to, chunkStart + chunkElements);
+			var piece = fn.apply(chunks[chunk], (int) (position - chunkStart), (int) (pieceEnd - chunkStart));
+			result = combineFn.apply(result, piece);
+			position = pieceEnd;
+		}
+		return result;
+	}
+
+	/*
+	 * ParallelSum over the file, overflow safe like LongParallelSum.
+	 */
+	public static BigInteger sum(Path file) throws IOException {
+		var source = map(file, ByteOrder.BIG_ENDIAN);
+		return sum(ForkJoinPool.commonPool(), source).toBigInteger();
+	}
+
+	static PartialSum sum(ForkJoinPool pool, MappedLongSource source) {
+		return ParallelDivideAndConquer.reduce(pool, source, PartialSum.ZERO,
+				leaf -> leaf.reduceChunks(PartialSum.ZERO, LongParallelSum::sequentialSum, PartialSum::add),
+				PartialSum::add, SplitPolicy.adaptive());
+	}
+
+	/*
+	 * Writes 20M longs (160 MB) to a temporary file, as DataOutputStream does
+	 * (big endian), and sums them mapping the file in 16 MB chunks.
+	 */
+	public static void main(String[] args) throws IOException {
+		var file = Files.createTempFile("longs", ".bin");
+		try {
+			var count = 20_000_000L;
+			try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+				for (long i = 0; i < count; i++) {
+					out.writeLong(i);
+				}
+			}
+			var source = map(file, ByteOrder.BIG_ENDIAN, 16L << 20);
+			System.out.println("Elements: " + source.size() + " in " + source.chunks.length + " chunks");
+			for (int round = 1; round <= 3; round++) {
+				System.out.println("#### Round " + round + "\n");
+				ParallelSum.dummyBenchmark(() -> System.out.println(
+						"Mapped Parallel Result is: " + sum(ForkJoinPool.commonPool(), source)));
+			}
+			System.out.println("Expected: " + BigInteger.valueOf(count).multiply(BigInteger.valueOf(count - 1))
+					.divide(BigInteger.TWO));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+}
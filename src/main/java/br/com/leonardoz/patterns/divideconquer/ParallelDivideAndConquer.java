@@ -1,7 +1,10 @@
 package br.com.leonardoz.patterns.divideconquer;
 
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.LongStream;
 
 /*
  * Pattern: Parallel Divide and Conquer
@@ -19,35 +22,204 @@ import java.util.concurrent.RecursiveTask;
  *
  * Applicability: Divide and conquer computations.
  * 
+ * The split/fork/join logic is written once in Task, and a computation is
+ * expressed only by its pieces: a source that knows how to split itself, the
+ * identity value, a function solving a small source directly (leaf) and a
+ * function combining two partial results.
+ *
+ * reduce(Range.of(nums), 0L, r -> sumOf(nums, r), Long::sum)
+ *
+ * When to stop splitting is decided by a SplitPolicy. By default it adapts to
+ * the pool (see AdaptiveSplitPolicy) instead of relying on a hardcoded number.
+ *
  */
 public class ParallelDivideAndConquer {
 
-	private final static int THRESHOLD = 10; // Choosing a number to split the computation
-	
-	
-	public static class Task extends RecursiveTask<Integer> {
+	/*
+	 * Something that can be divided in two halves, like an array or a range of
+	 * indexes.
+	 */
+	public interface Splittable<S extends Splittable<S>> {
+
+		long size();
+
+		S left();
+
+		S right();
+
+	}
+
+	/*
+	 * Range of indexes [from, to) over some random access structure (arrays,
+	 * buffers...), so splitting never copies or walks the elements.
+	 */
+	public static final class Range implements Splittable<Range> {
+
+		private final int from;
+		private final int to;
+
+		private Range(int from, int to) {
+			if (from > to) {
+				throw new IllegalArgumentException("from (" + from + ") is greater than to (" + to + ")");
+			}
+			this.from = from;
+			this.to = to;
+		}
+
+		public static Range of(int from, int to) {
+			return new Range(from, to);
+		}
+
+		public static Range of(long[] array) {
+			return new Range(0, array.length);
+		}
+
+		public static Range of(int[] array) {
+			return new Range(0, array.length);
+		}
+
+		public static Range of(double[] array) {
+			return new Range(0, array.length);
+		}
+
+		public static <T> Range of(T[] array) {
+			return new Range(0, array.length);
+		}
+
+		public int from() {
+			return from;
+		}
+
+		public int to() {
+			return to;
+		}
+
+		public int middle() {
+			return from + (to - from) / 2;
+		}
+
+		@Override
+		public long size() {
+			return to - from;
+		}
+
+		@Override
+		public Range left() {
+			return new Range(from, middle());
+		}
+
+		@Override
+		public Range right() {
+			return new Range(middle(), to);
+		}
+
+		@Override
+		public String toString() {
+			return "[" + from + ", " + to + ")";
+		}
+	}
+
+	public static class Task<S extends Splittable<S>, R> extends RecursiveTask<R> {
 
 		private static final long serialVersionUID = 1L;
-		private List<Integer> somethingToDivideAndConquer;
+		private final S source;
+		private final R identity;
+		private final Function<? super S, ? extends R> leafFn;
+		private final BinaryOperator<R> combineFn;
+		private final SplitPolicy splitPolicy;
+		private final long totalSize;
+
+		public Task(S source, R identity, Function<? super S, ? extends R> leafFn, BinaryOperator<R> combineFn,
+				SplitPolicy splitPolicy) {
+			this(source, identity, leafFn, combineFn, splitPolicy, source.size());
+		}
 
-		public Task(List<Integer> somethingToDivideAndConquer) {
-			this.somethingToDivideAndConquer = somethingToDivideAndConquer;
-		
+		private Task(S source, R identity, Function<? super S, ? extends R> leafFn, BinaryOperator<R> combineFn,
+				SplitPolicy splitPolicy, long totalSize) {
+			this.source = source;
+			this.identity = identity;
+			this.leafFn = leafFn;
+			this.combineFn = combineFn;
+			this.splitPolicy = splitPolicy;
+			this.totalSize = totalSize;
 		}
-		
+
 		@Override
-		protected Integer compute() {
-			var size = somethingToDivideAndConquer.size();
-			if (size < THRESHOLD) {
+		protected R compute() {
+			var size = source.size();
+			if (size == 0) {
+				return identity;
+			}
+			if (size < 2 || !splitPolicy.shouldSplit(size, totalSize)) {
 				// solves directly
-				return 1;
+				return leafFn.apply(source);
 			} else {
-				// creates tasks, fork and join
-				return 2;
+				// fork one half and compute the other in this thread, saving a task
+				// submission and keeping this worker busy instead of waiting in join()
+				var left = subTask(source.left());
+				var right = subTask(source.right());
+				left.fork();
+				var rightResult = right.compute();
+				var leftResult = left.join();
+				return combineFn.apply(leftResult, rightResult);
 			}
 		}
-		
+
+		private Task<S, R> subTask(S subSource) {
+			return new Task<>(subSource, identity, leafFn, combineFn, splitPolicy, totalSize);
+		}
+
+	}
+
+	public static <S extends Splittable<S>, R> R reduce(S source, R identity, Function<? super S, ? extends R> leafFn,
+			BinaryOperator<R> combineFn) {
+		return reduce(ForkJoinPool.commonPool(), source, identity, leafFn, combineFn, SplitPolicy.adaptive());
+	}
+
+	public static <S extends Splittable<S>, R> R reduce(ForkJoinPool pool, S source, R identity,
+			Function<? super S, ? extends R> leafFn, BinaryOperator<R> combineFn, int threshold) {
+		return reduce(pool, source, identity, leafFn, combineFn, SplitPolicy.fixed(threshold));
+	}
+
+	public static <S extends Splittable<S>, R> R reduce(ForkJoinPool pool, S source, R identity,
+			Function<? super S, ? extends R> leafFn, BinaryOperator<R> combineFn, SplitPolicy splitPolicy) {
+		return pool.invoke(new Task<>(source, identity, leafFn, combineFn, splitPolicy));
+	}
+
+	/*
+	 * Some aggregations expressed with the engine, no task classes needed.
+	 */
+	public static void main(String[] args) {
+		var nums = LongStream.range(0, 10_000_000L).toArray();
+
+		var sum = reduce(Range.of(nums), 0L, range -> {
+			long acc = 0;
+			for (int i = range.from(); i < range.to(); i++) {
+				acc += nums[i];
+			}
+			return acc;
+		}, Long::sum);
+		System.out.println("Sum is: " + sum);
+
+		var max = reduce(Range.of(nums), Long.MIN_VALUE, range -> {
+			long acc = Long.MIN_VALUE;
+			for (int i = range.from(); i < range.to(); i++) {
+				acc = Math.max(acc, nums[i]);
+			}
+			return acc;
+		}, Math::max);
+		System.out.println("Max is: " + max);
+
+		var evens = reduce(Range.of(nums), 0, range -> {
+			int count = 0;
+			for (int i = range.from(); i < range.to(); i++) {
+				if (nums[i] % 2 == 0) {
+					count++;
+				}
+			}
+			return count;
+		}, Integer::sum);
+		System.out.println("Even numbers: " + evens);
 	}
-	
-	
+
 }
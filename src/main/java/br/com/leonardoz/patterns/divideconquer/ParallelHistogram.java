@@ -0,0 +1,145 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import br.com.leonardoz.patterns.divideconquer.ParallelDivideAndConquer.Range;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Parallel Min/Max and Histogram
+ *
+ * Both are reductions on the ParallelDivideAndConquer engine. Each leaf
+ * builds its own partial result (its own counts array, for the histogram),
+ * so no leaf ever writes to shared state; partial results are combined on the
+ * way back up.
+ */
+public class ParallelHistogram {
+
+	public static final class MinMax {
+		private final long min;
+		private final long max;
+
+		private MinMax(long min, long max) {
+			this.min = min;
+			this.max = max;
+		}
+
+		public long getMin() {
+			return min;
+		}
+
+		public long getMax() {
+			return max;
+		}
+
+		MinMax combine(MinMax other) {
+			return new MinMax(Math.min(min, other.min), Math.max(max, other.max));
+		}
+
+		@Override
+		public String toString() {
+			return "[min=" + min + ", max=" + max + "]";
+		}
+	}
+
+	public static MinMax minMax(long[] values) {
+		return minMax(ForkJoinPool.commonPool(), values, SplitPolicy.adaptive());
+	}
+
+	public static MinMax minMax(ForkJoinPool pool, long[] values, SplitPolicy splitPolicy) {
+		if (values.length == 0) {
+			throw new IllegalArgumentException("Can't find min/max of an empty array");
+		}
+		return ParallelDivideAndConquer.reduce(pool, Range.of(values), null, range -> {
+			var min = Long.MAX_VALUE;
+			var max = Long.MIN_VALUE;
+			for (int i = range.from(); i < range.to(); i++) {
+				min = Math.min(min, values[i]);
+				max = Math.max(max, values[i]);
+			}
+			return new MinMax(min, max);
+		}, MinMax::combine, splitPolicy);
+	}
+
+	/*
+	 * Counts of values falling into each of the equal-width bins covering the
+	 * values' own [min, max] range.
+	 */
+	public static long[] histogram(long[] values, int bins) {
+		var minMax = minMax(values);
+		return histogram(ForkJoinPool.commonPool(), values, bins, minMax.min, minMax.max, SplitPolicy.adaptive());
+	}
+
+	/*
+	 * Counts of values falling into each of the equal-width bins covering
+	 * [min, max]. Values outside of it are ignored.
+	 */
+	public static long[] histogram(ForkJoinPool pool, long[] values, int bins, long min, long max,
+			SplitPolicy splitPolicy) {
+		if (bins < 1) {
+			throw new IllegalArgumentException("Bins must be positive");
+		}
+		if (min > max) {
+			throw new IllegalArgumentException("min is greater than max");
+		}
+		return ParallelDivideAndConquer.reduce(pool, Range.of(values), new long[bins], range -> {
+			var counts = new long[bins];
+			for (int i = range.from(); i < range.to(); i++) {
+				var value = values[i];
+				if (value >= min && value <= max) {
+					counts[binOf(value, bins, min, max)]++;
+				}
+			}
+			return counts;
+		}, (left, right) -> {
+			for (int i = 0; i < bins; i++) {
+				left[i] += right[i];
+			}
+			return left;
+		}, splitPolicy);
+	}
+
+	public static long[] sequentialHistogram(long[] values, int bins, long min, long max) {
+		var counts = new long[bins];
+		for (var value : values) {
+			if (value >= min && value <= max) {
+				counts[binOf(value, bins, min, max)]++;
+			}
+		}
+		return counts;
+	}
+
+	private static int binOf(long value, int bins, long min, long max) {
+		// double math, as (max - min) * bins can overflow a long
+		var width = ((double) max - (double) min + 1) / bins;
+		return (int) Math.min(bins - 1, ((double) value - (double) min) / width);
+	}
+
+	/*
+	 * Dummy benchmark against the sequential loop.
+	 */
+	public static void main(String[] args) {
+		var random = new Random(42);
+		var values = random.longs(20_000_000L, 0, 1_000_000).toArray();
+
+		var minMax = minMax(values);
+		System.out.println("Min/Max: " + minMax);
+		var expected = sequentialHistogram(values, 16, minMax.min, minMax.max);
+		var actual = histogram(values, 16);
+		System.out.println("Histogram: " + Arrays.toString(actual));
+		System.out.println("Same result as sequential: " + Arrays.equals(expected, actual));
+
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round + "\n");
+			System.out.println("Sequential histogram");
+			ParallelSum.dummyBenchmark(() -> sequentialHistogram(values, 16, minMax.min, minMax.max));
+			System.out.println("Divide and conquer histogram");
+			ParallelSum.dummyBenchmark(() -> histogram(ForkJoinPool.commonPool(), values, 16, minMax.min,
+					minMax.max, SplitPolicy.adaptive()));
+		}
+	}
+
+}
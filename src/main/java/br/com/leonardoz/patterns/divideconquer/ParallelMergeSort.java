@@ -0,0 +1,188 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Parallel Merge Sort
+ *
+ * Each half is sorted in parallel and then both are merged. The merge itself
+ * is also divide and conquer, otherwise the last merge would be a sequential
+ * pass over the whole array: the middle element of the bigger run is found in
+ * the other run by binary search, and both sides are merged independently.
+ *
+ * To avoid copying back after every merge, the array and a buffer of the same
+ * size take turns as source and destination between the levels.
+ */
+public class ParallelMergeSort {
+
+	private final static int SORT_THRESHOLD = 8_192; // below it Arrays.sort is used
+	private final static int MERGE_THRESHOLD = 8_192; // below it the merge is sequential
+
+	/*
+	 * Sorts array[from, to) leaving the result in array when intoArray is true,
+	 * or in the same positions of buffer otherwise.
+	 */
+	private static class Sort extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final long[] array;
+		private final long[] buffer;
+		private final int from;
+		private final int to;
+		private final boolean intoArray;
+
+		Sort(long[] array, long[] buffer, int from, int to, boolean intoArray) {
+			this.array = array;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.intoArray = intoArray;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SORT_THRESHOLD) {
+				Arrays.sort(array, from, to);
+				if (!intoArray) {
+					System.arraycopy(array, from, buffer, from, to - from);
+				}
+			} else {
+				var middle = from + (to - from) / 2;
+				// halves are sorted into the other array, then merged into ours
+				var left = new Sort(array, buffer, from, middle, !intoArray);
+				var right = new Sort(array, buffer, middle, to, !intoArray);
+				left.fork();
+				right.compute();
+				left.join();
+				var source = intoArray ? buffer : array;
+				var destination = intoArray ? array : buffer;
+				new Merge(source, from, middle, middle, to, destination, from).compute();
+			}
+		}
+	}
+
+	/*
+	 * Merges source[from1, to1) and source[from2, to2), both sorted, into
+	 * destination starting at position at.
+	 */
+	private static class Merge extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final long[] source;
+		private final int from1;
+		private final int to1;
+		private final int from2;
+		private final int to2;
+		private final long[] destination;
+		private final int at;
+
+		Merge(long[] source, int from1, int to1, int from2, int to2, long[] destination, int at) {
+			this.source = source;
+			this.from1 = from1;
+			this.to1 = to1;
+			this.from2 = from2;
+			this.to2 = to2;
+			this.destination = destination;
+			this.at = at;
+		}
+
+		@Override
+		protected void compute() {
+			var size1 = to1 - from1;
+			var size2 = to2 - from2;
+			if (size1 + size2 <= MERGE_THRESHOLD) {
+				sequentialMerge();
+			} else if (size1 >= size2) {
+				var middle1 = from1 + size1 / 2;
+				var middle2 = lowerBound(source, from2, to2, source[middle1]);
+				split(middle1, middle2);
+			} else {
+				var middle2 = from2 + size2 / 2;
+				var middle1 = lowerBound(source, from1, to1, source[middle2]);
+				split(middle1, middle2);
+			}
+		}
+
+		private void split(int middle1, int middle2) {
+			var left = new Merge(source, from1, middle1, from2, middle2, destination, at);
+			var right = new Merge(source, middle1, to1, middle2, to2, destination,
+					at + (middle1 - from1) + (middle2 - from2));
+			left.fork();
+			right.compute();
+			left.join();
+		}
+
+		private void sequentialMerge() {
+			int i = from1, j = from2, k = at;
+			while (i < to1 && j < to2) {
+				destination[k++] = source[i] <= source[j] ? source[i++] : source[j++];
+			}
+			while (i < to1) {
+				destination[k++] = source[i++];
+			}
+			while (j < to2) {
+				destination[k++] = source[j++];
+			}
+		}
+
+		/*
+		 * First position in [from, to) whose value is not less than key.
+		 */
+		private static int lowerBound(long[] values, int from, int to, long key) {
+			int low = from, high = to;
+			while (low < high) {
+				var middle = (low + high) >>> 1;
+				if (values[middle] < key) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+	}
+
+	public static void sort(long[] array) {
+		sort(ForkJoinPool.commonPool(), array);
+	}
+
+	public static void sort(ForkJoinPool pool, long[] array) {
+		if (array.length <= SORT_THRESHOLD) {
+			Arrays.sort(array);
+			return;
+		}
+		pool.invoke(new Sort(array, new long[array.length], 0, array.length, true));
+	}
+
+	/*
+	 * Dummy benchmark against Arrays.parallelSort and Arrays.sort.
+	 */
+	public static void main(String[] args) {
+		var source = new Random(42).longs(20_000_000L).toArray();
+
+		var expected = source.clone();
+		Arrays.sort(expected);
+		var actual = source.clone();
+		sort(actual);
+		System.out.println("Same result as Arrays.sort: " + Arrays.equals(expected, actual));
+
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round + "\n");
+			var sequential = source.clone();
+			var jdk = source.clone();
+			var divideAndConquer = source.clone();
+			System.out.println("Arrays.sort");
+			ParallelSum.dummyBenchmark(() -> Arrays.sort(sequential));
+			System.out.println("Arrays.parallelSort");
+			ParallelSum.dummyBenchmark(() -> Arrays.parallelSort(jdk));
+			System.out.println("Divide and conquer merge sort");
+			ParallelSum.dummyBenchmark(() -> sort(divideAndConquer));
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongBinaryOperator;
+import java.util.stream.LongStream;
+
+import br.com.leonardoz.patterns.divideconquer.ParallelDivideAndConquer.Range;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Parallel Prefix Scan
+ *
+ * Replaces every element by the combination of itself with all elements
+ * before it (a[i] = a[0] op a[1] op ... op a[i]), like Arrays.parallelPrefix.
+ *
+ * It is work-efficient: each element is read twice, in two passes.
+ *
+ * - Up-sweep: the array is reduced with the ParallelDivideAndConquer engine,
+ * but instead of throwing the partial results away, the tree of partial sums
+ * is kept.
+ *
+ * - Down-sweep: the tree is walked again, each node passing to its right
+ * child the combination of everything on its left. The leaves then scan their
+ * own range sequentially, starting from that prefix.
+ *
+ * The operator must be associative.
+ */
+public class ParallelPrefixScan {
+
+	/*
+	 * Node of the up-sweep tree: a range and the combination of its elements.
+	 */
+	private static final class Node {
+		private final Range range;
+		private final long value;
+		private final Node left;
+		private final Node right;
+
+		Node(Range range, long value, Node left, Node right) {
+			this.range = range;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+		}
+
+		boolean isLeaf() {
+			return left == null;
+		}
+	}
+
+	private static class DownSweep extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final long[] array;
+		private final LongBinaryOperator op;
+		private final Node node;
+		private final boolean hasPrefix; // leftmost nodes have nothing before them
+		private final long prefix;
+
+		DownSweep(long[] array, LongBinaryOperator op, Node node, boolean hasPrefix, long prefix) {
+			this.array = array;
+			this.op = op;
+			this.node = node;
+			this.hasPrefix = hasPrefix;
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected void compute() {
+			if (node.isLeaf()) {
+				var from = node.range.from();
+				var to = node.range.to();
+				if (hasPrefix) {
+					array[from] = op.applyAsLong(prefix, array[from]);
+				}
+				for (int i = from + 1; i < to; i++) {
+					array[i] = op.applyAsLong(array[i - 1], array[i]);
+				}
+			} else {
+				var rightPrefix = hasPrefix ? op.applyAsLong(prefix, node.left.value) : node.left.value;
+				var left = new DownSweep(array, op, node.left, hasPrefix, prefix);
+				var right = new DownSweep(array, op, node.right, true, rightPrefix);
+				left.fork();
+				right.compute();
+				left.join();
+			}
+		}
+	}
+
+	public static void scan(long[] array, LongBinaryOperator op) {
+		scan(ForkJoinPool.commonPool(), array, op, SplitPolicy.adaptive());
+	}
+
+	public static void scan(ForkJoinPool pool, long[] array, LongBinaryOperator op, SplitPolicy splitPolicy) {
+		if (array.length < 2) {
+			return;
+		}
+		Node root = ParallelDivideAndConquer.reduce(pool, Range.of(array), null, range -> {
+			var acc = array[range.from()];
+			for (int i = range.from() + 1; i < range.to(); i++) {
+				acc = op.applyAsLong(acc, array[i]);
+			}
+			return new Node(range, acc, null, null);
+		}, (left, right) -> new Node(Range.of(left.range.from(), right.range.to()),
+				op.applyAsLong(left.value, right.value), left, right), splitPolicy);
+		pool.invoke(new DownSweep(array, op, root, false, 0L));
+	}
+
+	public static void sequentialScan(long[] array, LongBinaryOperator op) {
+		for (int i = 1; i < array.length; i++) {
+			array[i] = op.applyAsLong(array[i - 1], array[i]);
+		}
+	}
+
+	/*
+	 * Dummy benchmark against Arrays.parallelPrefix and the sequential loop.
+	 */
+	public static void main(String[] args) {
+		var source = LongStream.range(0, 20_000_000L).toArray();
+
+		var expected = source.clone();
+		sequentialScan(expected, Long::sum);
+		var actual = source.clone();
+		scan(actual, Long::sum);
+		System.out.println("Same result as sequential: " + Arrays.equals(expected, actual));
+
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round + "\n");
+			var sequential = source.clone();
+			var jdk = source.clone();
+			var divideAndConquer = source.clone();
+			System.out.println("Sequential scan");
+			ParallelSum.dummyBenchmark(() -> sequentialScan(sequential, Long::sum));
+			System.out.println("Arrays.parallelPrefix");
+			ParallelSum.dummyBenchmark(() -> Arrays.parallelPrefix(jdk, Long::sum));
+			System.out.println("Divide and conquer scan");
+			ParallelSum.dummyBenchmark(() -> scan(divideAndConquer, Long::sum));
+		}
+	}
+
+}
@@ -0,0 +1,189 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Example: Short-circuiting search (find-any and find-first)
+ *
+ * ParallelSum always visits every element. A search can stop as soon as the
+ * answer is known, so every task shares an AtomicInteger holding the best
+ * index found so far:
+ *
+ * - find-any: the first match wins; every task checks the shared index when
+ * it starts (and every few elements inside a leaf) and gives up once it is
+ * set. A forked task that no thread has started yet is taken back from the
+ * queue (tryUnfork) and never runs; one already running is joined, and stops
+ * at its next check, so nothing is still scanning when the search returns.
+ *
+ * - find-first: a match only stops the tasks to its right. The shared index
+ * only moves to the left (a CAS loop keeps the minimum), and a task whose
+ * range starts after it has nothing better to offer. Tasks on the left keep
+ * going, so the answer is the same as a sequential search.
+ */
+public class ParallelSearch {
+
+	private static final int NOT_FOUND = -1;
+	private final static int CHECK_EVERY = 1_024; // elements between checks inside a leaf
+
+	private static class SearchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final long[] values;
+		private final int from;
+		private final int to;
+		private final LongPredicate predicate;
+		private final boolean findFirst;
+		private final AtomicInteger found; // shared by all tasks of one search
+		private final SplitPolicy splitPolicy;
+
+		SearchTask(long[] values, int from, int to, LongPredicate predicate, boolean findFirst,
+				AtomicInteger found, SplitPolicy splitPolicy) {
+			this.values = values;
+			this.from = from;
+			this.to = to;
+			this.predicate = predicate;
+			this.findFirst = findFirst;
+			this.found = found;
+			this.splitPolicy = splitPolicy;
+		}
+
+		/*
+		 * Nothing left to do: someone already found an answer this task can't
+		 * improve on.
+		 */
+		private boolean isSettled() {
+			var current = found.get();
+			return current != NOT_FOUND && (!findFirst || current < from);
+		}
+
+		@Override
+		protected void compute() {
+			if (isSettled()) {
+				return;
+			}
+			if (!splitPolicy.shouldSplit(to - from, values.length)) {
+				searchLeaf();
+			} else {
+				var middle = from + (to - from) / 2;
+				var left = new SearchTask(values, from, middle, predicate, findFirst, found, splitPolicy);
+				var right = new SearchTask(values, middle, to, predicate, findFirst, found, splitPolicy);
+				right.fork();
+				left.compute();
+				if (isSettledBy(left) && right.tryUnfork()) {
+					return; // not started by anyone, and now it never will be
+				}
+				// stolen and maybe running: it stops at its next check of found
+				right.join();
+			}
+		}
+
+		/*
+		 * Any match is enough for find-any, but find-first still needs the right
+		 * half unless the match is in the left one.
+		 */
+		private boolean isSettledBy(SearchTask left) {
+			var current = found.get();
+			return current != NOT_FOUND && (!findFirst || current < left.to);
+		}
+
+		private void searchLeaf() {
+			for (int i = from; i < to; i++) {
+				if ((i - from) % CHECK_EVERY == 0 && i != from && isSettled()) {
+					return;
+				}
+				if (predicate.test(values[i])) {
+					publish(i);
+					return;
+				}
+			}
+		}
+
+		private void publish(int index) {
+			if (!findFirst) {
+				found.compareAndSet(NOT_FOUND, index);
+				return;
+			}
+			int current;
+			do {
+				current = found.get();
+				if (current != NOT_FOUND && current <= index) {
+					return; // someone on the left already won
+				}
+			} while (!found.compareAndSet(current, index));
+		}
+	}
+
+	/*
+	 * Index of any element matching the predicate, or -1.
+	 */
+	public static int findAny(long[] values, LongPredicate predicate) {
+		return search(ForkJoinPool.commonPool(), values, predicate, false);
+	}
+
+	/*
+	 * Index of the first element matching the predicate, or -1.
+	 */
+	public static int findFirst(long[] values, LongPredicate predicate) {
+		return search(ForkJoinPool.commonPool(), values, predicate, true);
+	}
+
+	public static int search(ForkJoinPool pool, long[] values, LongPredicate predicate, boolean findFirst) {
+		return search(pool, values, predicate, findFirst, SplitPolicy.adaptive());
+	}
+
+	public static int search(ForkJoinPool pool, long[] values, LongPredicate predicate, boolean findFirst,
+			SplitPolicy splitPolicy) {
+		var found = new AtomicInteger(NOT_FOUND);
+		pool.invoke(new SearchTask(values, 0, values.length, predicate, findFirst, found, splitPolicy));
+		return found.get();
+	}
+
+	public static int sequentialFindFirst(long[] values, LongPredicate predicate) {
+		for (int i = 0; i < values.length; i++) {
+			if (predicate.test(values[i])) {
+				return i;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/*
+	 * Dummy benchmark: a full scan versus the short-circuiting searches, with
+	 * the match near the beginning, in the middle and absent.
+	 */
+	public static void main(String[] args) {
+		var values = LongStream.range(0, 50_000_000L).toArray();
+		var targets = new long[] { 1_000L, 25_000_000L, -10_000_000L }; // last one is absent
+
+		for (var target : targets) {
+			LongPredicate predicate = value -> value == target || value == target + 5_000_000L;
+			System.out.println("#### Target " + target + "\n");
+			for (int round = 0; round < 3; round++) {
+				System.out.println("Full scan (ParallelSum style)");
+				ParallelSum.dummyBenchmark(() -> ParallelDivideAndConquer.reduce(
+						ParallelDivideAndConquer.Range.of(values), NOT_FOUND, range -> {
+							var first = NOT_FOUND;
+							for (int i = range.from(); i < range.to(); i++) {
+								if (first == NOT_FOUND && predicate.test(values[i])) {
+									first = i;
+								}
+							}
+							return first;
+						}, (left, right) -> left != NOT_FOUND ? left : right));
+				System.out.println("Sequential find-first");
+				ParallelSum.dummyBenchmark(() -> System.out.println(sequentialFindFirst(values, predicate)));
+				System.out.println("Parallel find-any");
+				ParallelSum.dummyBenchmark(() -> System.out.println(findAny(values, predicate)));
+				System.out.println("Parallel find-first");
+				ParallelSum.dummyBenchmark(() -> System.out.println(findFirst(values, predicate)));
+			}
+		}
+	}
+
+}
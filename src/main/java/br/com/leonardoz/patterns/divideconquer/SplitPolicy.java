@@ -0,0 +1,35 @@
+package br.com.leonardoz.patterns.divideconquer;
+
+/*
+ * Pattern: Parallel Divide and Conquer
+ *
+ * Decides the granularity of the tasks: whether a piece of work is big enough
+ * to be split again or must be solved directly.
+ *
+ * Too many splits and the fork/join bookkeeping dominates; too few and some
+ * threads stay idle while others still have work to do.
+ */
+public interface SplitPolicy {
+
+	/*
+	 * size: size of the piece being considered; totalSize: size of the whole
+	 * computation it came from.
+	 */
+	boolean shouldSplit(long size, long totalSize);
+
+	/*
+	 * Splits while the piece is bigger than the threshold, no matter the machine
+	 * or the load.
+	 */
+	static SplitPolicy fixed(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("Threshold must be positive");
+		}
+		return (size, totalSize) -> size > threshold;
+	}
+
+	static SplitPolicy adaptive() {
+		return new AdaptiveSplitPolicy();
+	}
+
+}
@@ -34,14 +34,18 @@ public class CoinTransfer {
 			return coins;
 		}
 
+		public void setCoins(BigInteger coins) {
+			this.coins = coins;
+		}
+
 		public void depositCoins(BigInteger amount) {
-			if (amount.intValue() < -1)
+			if (amount.signum() < 0)
 				throw new IllegalArgumentException("Amount can't be negative");
 			this.coins = this.coins.add(amount);
 		}
 
 		public void withdrawCoins(BigInteger amount) {
-			if (amount.intValue() < -1)
+			if (amount.signum() < 0)
 				throw new IllegalArgumentException("Amount can't be negative");
 			this.coins = this.coins.subtract(amount);
 		}
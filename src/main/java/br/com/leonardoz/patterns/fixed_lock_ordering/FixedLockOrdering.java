@@ -1,5 +1,7 @@
 package br.com.leonardoz.patterns.fixed_lock_ordering;
 
+import java.util.List;
+
 /**
  * Pattern: Fixed Lock Ordering
  *
@@ -12,6 +14,8 @@ package br.com.leonardoz.patterns.fixed_lock_ordering;
  * 
  * Applicability: Every time when acquiring more than one lock.
  * 
+ * For any number of locks, or Locks with timeouts, see LockOrdering.
+ * 
  */
 public class FixedLockOrdering {
 
@@ -46,12 +50,17 @@ public class FixedLockOrdering {
 					// action
 				}
 			}
-		} else {
+		} else if (obj1Id > obj2Id) {
 			synchronized (obj2) {
 				synchronized (obj1) {
 					// action
 				}
 			}
+		} else {
+			// same id, no order between them: LockOrdering breaks the tie
+			LockOrdering.withMonitors(List.of(obj1, obj2), LockableObject::getId, () -> {
+				// action
+			});
 		}
 	}
 
@@ -0,0 +1,256 @@
+package br.com.leonardoz.patterns.fixed_lock_ordering;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+import br.com.leonardoz.patterns.GuardedBy;
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Fixed Lock Ordering
+ *
+ * Example: Ledger with primitive balances and batched settlement
+ *
+ * CoinTransfer keeps coins in BigIntegers: every deposit and withdrawal
+ * allocates a new one. Here balances are plain longs, and overflow, instead of
+ * wrapping around silently, throws ArithmeticException (Math.addExact).
+ *
+ * Transfers can be applied one by one, locking two accounts in id order, or
+ * settled in batches: the batch collects the accounts it touches, ordered
+ * by id, locks all of them in that order in a single pass and applies every
+ * transfer. Thousands of transfers cost one round of locking instead of
+ * thousands, and the fixed order still rules out deadlocks between batches
+ * and single transfers.
+ *
+ * A batch is all or nothing: the new balances are computed first, and only
+ * if none overflows they are written.
+ *
+ */
+@ThreadSafe
+public class Ledger {
+
+	private final ReentrantLock[] locks;
+	@GuardedBy("locks[account]")
+	private final long[] balances;
+	// balances being computed by a settlement; one buffer for all threads, as
+	// every entry is only used by the settlement holding that account's lock
+	@GuardedBy("locks[account]")
+	private final long[] newBalances;
+
+	public Ledger(int accounts, long initialBalance) {
+		this.locks = new ReentrantLock[accounts];
+		this.balances = new long[accounts];
+		this.newBalances = new long[accounts];
+		for (int i = 0; i < accounts; i++) {
+			locks[i] = new ReentrantLock();
+			balances[i] = initialBalance;
+		}
+	}
+
+	public void transfer(int from, int to, long amount) {
+		checkAmount(amount);
+		if (from == to) {
+			return;
+		}
+		var first = locks[Math.min(from, to)];
+		var second = locks[Math.max(from, to)];
+		first.lock();
+		try {
+			second.lock();
+			try {
+				var newFrom = Math.subtractExact(balances[from], amount);
+				var newTo = Math.addExact(balances[to], amount);
+				balances[from] = newFrom;
+				balances[to] = newTo;
+			} finally {
+				second.unlock();
+			}
+		} finally {
+			first.unlock();
+		}
+	}
+
+	/**
+	 * Transfers to be settled together. Not thread-safe; build it in one thread.
+	 */
+	public static final class Batch {
+		private int[] from = new int[16];
+		private int[] to = new int[16];
+		private long[] amounts = new long[16];
+		private int size;
+
+		public Batch add(int fromAccount, int toAccount, long amount) {
+			checkAmount(amount);
+			if (size == from.length) {
+				from = Arrays.copyOf(from, size * 2);
+				to = Arrays.copyOf(to, size * 2);
+				amounts = Arrays.copyOf(amounts, size * 2);
+			}
+			from[size] = fromAccount;
+			to[size] = toAccount;
+			amounts[size] = amount;
+			size++;
+			return this;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public void clear() {
+			size = 0;
+		}
+
+		/*
+		 * Every account touched, once, sorted by id: the locking order.
+		 */
+		private int[] accounts(int accountCount) {
+			var touched = new BitSet(accountCount);
+			for (int i = 0; i < size; i++) {
+				touched.set(from[i]);
+				touched.set(to[i]);
+			}
+			return touched.stream().toArray();
+		}
+	}
+
+	/**
+	 * Applies every transfer of the batch atomically. Throws
+	 * ArithmeticException, changing nothing, if some balance would overflow.
+	 */
+	public void settle(Batch batch) {
+		if (batch.size == 0) {
+			return;
+		}
+		var accounts = batch.accounts(balances.length);
+		var locked = 0;
+		try {
+			for (var account : accounts) {
+				locks[account].lock();
+				locked++;
+			}
+			for (var account : accounts) {
+				newBalances[account] = balances[account];
+			}
+			for (int i = 0; i < batch.size; i++) {
+				var amount = batch.amounts[i];
+				newBalances[batch.from[i]] = Math.subtractExact(newBalances[batch.from[i]], amount);
+				newBalances[batch.to[i]] = Math.addExact(newBalances[batch.to[i]], amount);
+			}
+			for (var account : accounts) {
+				balances[account] = newBalances[account];
+			}
+		} finally {
+			for (int i = locked - 1; i >= 0; i--) {
+				locks[accounts[i]].unlock();
+			}
+		}
+	}
+
+	public long getBalance(int account) {
+		locks[account].lock();
+		try {
+			return balances[account];
+		} finally {
+			locks[account].unlock();
+		}
+	}
+
+	/*
+	 * A consistent total: every account locked, in order.
+	 */
+	public long total() {
+		for (var lock : locks) {
+			lock.lock();
+		}
+		try {
+			var total = 0L;
+			for (var balance : balances) {
+				total = Math.addExact(total, balance);
+			}
+			return total;
+		} finally {
+			for (int i = locks.length - 1; i >= 0; i--) {
+				locks[i].unlock();
+			}
+		}
+	}
+
+	private static void checkAmount(long amount) {
+		if (amount < 0) {
+			throw new IllegalArgumentException("Amount can't be negative");
+		}
+	}
+
+	/**
+	 * Dummy benchmark: the same random transfers through CoinTransfer
+	 * (BigInteger, one transfer at a time), the Ledger one at a time and the
+	 * Ledger in batches of 1000. First between any accounts, then payments from
+	 * any account to one of 16 merchants, where batches touch far fewer
+	 * accounts than transfers.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var accounts = 10_000;
+		var threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		for (var merchants : new int[] { accounts, 16 }) {
+			System.out.println("#### Payments to " + merchants + " accounts");
+			for (int round = 1; round <= 3; round++) {
+				var coinTransfer = new CoinTransfer();
+				var players = new CoinTransfer.Player[accounts];
+				for (int i = 0; i < accounts; i++) {
+					players[i] = new CoinTransfer.Player();
+					players[i].setId(i);
+					players[i].setCoins(BigInteger.valueOf(1_000));
+				}
+				var coinMillis = run(threads, accounts, merchants, (from, to, amount, last) -> coinTransfer
+						.transferBetweenPlayers(players[from], players[to], BigInteger.valueOf(amount)));
+
+				var single = new Ledger(accounts, 1_000);
+				var singleMillis = run(threads, accounts, merchants,
+						(from, to, amount, last) -> single.transfer(from, to, amount));
+
+				var batched = new Ledger(accounts, 1_000);
+				var batches = ThreadLocal.withInitial(Batch::new);
+				var batchedMillis = run(threads, accounts, merchants, (from, to, amount, last) -> {
+					var batch = batches.get().add(from, to, amount);
+					if (batch.size() == 1_000 || last) {
+						batched.settle(batch);
+						batch.clear();
+					}
+				});
+				System.out.println("CoinTransfer: " + coinMillis + " ms, Ledger one by one: " + singleMillis
+						+ " ms (total " + single.total() + "), Ledger in batches of 1000: " + batchedMillis
+						+ " ms (total " + batched.total() + ")");
+			}
+			System.out.println();
+		}
+	}
+
+	private interface TransferOperation {
+		void transfer(int from, int to, long amount, boolean last);
+	}
+
+	private static long run(int threads, int accounts, int payees, TransferOperation operation)
+			throws InterruptedException {
+		var transfers = 500_000;
+		var done = new CountDownLatch(threads);
+		var before = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				var random = ThreadLocalRandom.current();
+				for (int i = 0; i < transfers; i++) {
+					operation.transfer(random.nextInt(accounts), random.nextInt(payees), random.nextInt(100),
+							i == transfers - 1);
+				}
+				done.countDown();
+			}).start();
+		}
+		done.await();
+		return (System.nanoTime() - before) / 1_000_000;
+	}
+
+}
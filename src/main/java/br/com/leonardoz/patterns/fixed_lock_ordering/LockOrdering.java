@@ -0,0 +1,267 @@
+package br.com.leonardoz.patterns.fixed_lock_ordering;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Pattern: Fixed Lock Ordering
+ *
+ * Example: Any number of locks in a canonical order
+ *
+ * FixedLockOrdering nests two synchronized blocks by hand, and two different
+ * objects with the same id are locked in whatever order the caller passed
+ * them: two threads passing them in opposite order can deadlock.
+ *
+ * This utility takes any number of objects and locks them in a canonical
+ * order: by id, then by System.identityHashCode. Only if two different
+ * objects have the same id and the same identity hash code (rare, but
+ * possible) the order between them is undefined; then a global tie lock is
+ * taken first, so only one thread at a time locks objects in that situation.
+ *
+ * Monitors are locked by nesting synchronized blocks recursively, one level
+ * per object. They can't time out. Locks can be acquired with a timeout for
+ * the whole set: if any of them isn't available in time, the ones already
+ * taken are released (all or nothing) and the action doesn't run.
+ *
+ * The same object passed twice is locked once.
+ *
+ */
+public final class LockOrdering {
+
+	private static final Object TIE_MONITOR = new Object();
+	private static final Lock TIE_LOCK = new ReentrantLock();
+
+	private LockOrdering() {
+	}
+
+	/**
+	 * Runs the action holding the monitors of every object.
+	 */
+	public static <T> void withMonitors(List<T> objects, ToLongFunction<T> idOf, Runnable action) {
+		var sorted = canonicalOrder(objects, idOf);
+		if (hasTie(sorted, idOf)) {
+			synchronized (TIE_MONITOR) {
+				nest(sorted, 0, action);
+			}
+		} else {
+			nest(sorted, 0, action);
+		}
+	}
+
+	private static void nest(List<?> sorted, int index, Runnable action) {
+		if (index == sorted.size()) {
+			action.run();
+			return;
+		}
+		synchronized (sorted.get(index)) {
+			nest(sorted, index + 1, action);
+		}
+	}
+
+	/**
+	 * Runs the action holding the lock of every resource, waiting as long as
+	 * needed.
+	 */
+	public static <T> void withLocks(List<T> resources, ToLongFunction<T> idOf, Function<T, Lock> lockOf,
+			Runnable action) {
+		var sorted = canonicalOrder(resources, idOf);
+		var tie = hasTie(sorted, idOf);
+		if (tie) {
+			TIE_LOCK.lock();
+		}
+		var locked = new ArrayList<Lock>(sorted.size());
+		try {
+			for (var resource : sorted) {
+				var lock = lockOf.apply(resource);
+				lock.lock();
+				locked.add(lock);
+			}
+			action.run();
+		} finally {
+			unlockAll(locked, tie);
+		}
+	}
+
+	/**
+	 * Runs the action if every lock can be taken within the timeout, counted for
+	 * the whole set. Returns false, holding nothing and without running the
+	 * action, otherwise. If interrupted, releases what it took and throws.
+	 */
+	public static <T> boolean tryWithLocks(List<T> resources, ToLongFunction<T> idOf, Function<T, Lock> lockOf,
+			long timeout, TimeUnit unit, Runnable action) throws InterruptedException {
+		var deadline = System.nanoTime() + unit.toNanos(timeout);
+		var sorted = canonicalOrder(resources, idOf);
+		var tie = hasTie(sorted, idOf);
+		if (tie && !TIE_LOCK.tryLock(remaining(deadline), TimeUnit.NANOSECONDS)) {
+			return false;
+		}
+		var locked = new ArrayList<Lock>(sorted.size());
+		try {
+			for (var resource : sorted) {
+				var lock = lockOf.apply(resource);
+				if (!lock.tryLock(remaining(deadline), TimeUnit.NANOSECONDS)) {
+					return false; // finally releases the ones already taken
+				}
+				locked.add(lock);
+			}
+			action.run();
+			return true;
+		} finally {
+			unlockAll(locked, tie);
+		}
+	}
+
+	private static long remaining(long deadline) {
+		return Math.max(0, deadline - System.nanoTime());
+	}
+
+	private static void unlockAll(List<Lock> locked, boolean tie) {
+		for (int i = locked.size() - 1; i >= 0; i--) {
+			locked.get(i).unlock();
+		}
+		if (tie) {
+			TIE_LOCK.unlock();
+		}
+	}
+
+	/*
+	 * Without duplicates, by id and then identity hash code.
+	 */
+	private static <T> List<T> canonicalOrder(List<T> objects, ToLongFunction<T> idOf) {
+		var unique = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+		var sorted = new ArrayList<T>(objects.size());
+		for (var object : objects) {
+			if (unique.add(object)) {
+				sorted.add(object);
+			}
+		}
+		sorted.sort(Comparator.comparingLong(idOf).thenComparingInt(System::identityHashCode));
+		return sorted;
+	}
+
+	private static <T> boolean hasTie(List<T> sorted, ToLongFunction<T> idOf) {
+		for (int i = 1; i < sorted.size(); i++) {
+			var previous = sorted.get(i - 1);
+			var current = sorted.get(i);
+			if (idOf.applyAsLong(previous) == idOf.applyAsLong(current)
+					&& System.identityHashCode(previous) == System.identityHashCode(current)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Threads move coins among 3 random accounts at a time, passing them in
+	 * random order, where several accounts share the same id. With monitors,
+	 * and then with Locks and a short timeout: it must finish (no deadlock)
+	 * and keep the total.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var accounts = new ArrayList<Account>();
+		for (int i = 0; i < 20; i++) {
+			accounts.add(new Account(i % 5)); // 4 accounts for each id
+		}
+		var threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		var operations = 200_000;
+
+		var millis = run(threads, operations, accounts, group -> {
+			withMonitors(group, Account::getId, () -> rotate(group));
+			return true;
+		});
+		System.out.println("Monitors: " + millis + " ms, total " + total(accounts));
+
+		var timeouts = new AtomicInteger();
+		millis = run(threads, operations, accounts, group -> {
+			try {
+				if (!tryWithLocks(group, Account::getId, Account::getLock, 1, TimeUnit.MILLISECONDS,
+						() -> rotate(group))) {
+					timeouts.incrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+			return true;
+		});
+		System.out.println("Locks with timeout: " + millis + " ms, " + timeouts.get() + " timed out, total "
+				+ total(accounts));
+	}
+
+	static final class Account {
+		private final long id;
+		private final Lock lock = new ReentrantLock();
+		private long coins = 1_000;
+
+		Account(long id) {
+			this.id = id;
+		}
+
+		long getId() {
+			return id;
+		}
+
+		Lock getLock() {
+			return lock;
+		}
+	}
+
+	/*
+	 * Every account passes one coin to the next one in the group.
+	 */
+	private static void rotate(List<Account> group) {
+		for (int i = 0; i < group.size(); i++) {
+			group.get(i).coins--;
+			group.get((i + 1) % group.size()).coins++;
+		}
+	}
+
+	private static long total(List<Account> accounts) {
+		var total = 0L;
+		for (var account : accounts) {
+			account.lock.lock();
+			try {
+				synchronized (account) {
+					total += account.coins;
+				}
+			} finally {
+				account.lock.unlock();
+			}
+		}
+		return total;
+	}
+
+	private static long run(int threads, int operations, List<Account> accounts,
+			Function<List<Account>, Boolean> operation) throws InterruptedException {
+		var done = new CountDownLatch(threads);
+		var before = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				var random = ThreadLocalRandom.current();
+				for (int i = 0; i < operations; i++) {
+					var group = List.of(accounts.get(random.nextInt(accounts.size())),
+							accounts.get(random.nextInt(accounts.size())),
+							accounts.get(random.nextInt(accounts.size())));
+					if (!operation.apply(group)) {
+						break;
+					}
+				}
+				done.countDown();
+			}).start();
+		}
+		done.await();
+		return (System.nanoTime() - before) / 1_000_000;
+	}
+
+}
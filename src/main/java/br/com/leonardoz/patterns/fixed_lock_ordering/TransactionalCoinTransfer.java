@@ -0,0 +1,220 @@
+package br.com.leonardoz.patterns.fixed_lock_ordering;
+
+import java.math.BigInteger;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import br.com.leonardoz.patterns.non_blocking.Stm;
+import br.com.leonardoz.patterns.non_blocking.Stm.Ref;
+
+/**
+ * Pattern: Fixed Lock Ordering (alternative)
+ *
+ * Example: Coin transfer between players with transactional memory
+ *
+ * CoinTransfer orders two monitors to avoid deadlocks, but every transfer
+ * still holds both players while it runs, so all transfers touching a hot
+ * player (a bank, a shop) line up behind each other.
+ *
+ * Here balances live in Stm Refs and a transfer is an optimistic transaction:
+ * read both balances, compute, and commit both new balances at once if nobody
+ * changed them in the meantime, otherwise try again. No locks are taken, so
+ * there is no order to respect and no thread ever waits for another one that
+ * was preempted while holding a player.
+ *
+ */
+public class TransactionalCoinTransfer {
+
+	static class Player {
+		private final int id;
+		private final String name;
+		private final Ref<BigInteger> coins;
+
+		public Player(int id, String name, BigInteger coins) {
+			this.id = id;
+			this.name = name;
+			this.coins = new Ref<>(coins);
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public BigInteger getCoins() {
+			return coins.get();
+		}
+	}
+
+	private final Stm stm = new Stm();
+
+	public void transferBetweenPlayers(Player playerFrom, Player playerTo, BigInteger amount) {
+		if (amount.signum() < 0) {
+			throw new IllegalArgumentException("Amount can't be negative");
+		}
+		if (playerFrom == playerTo) {
+			return;
+		}
+		stm.run(transaction -> {
+			var from = transaction.read(playerFrom.coins);
+			var to = transaction.read(playerTo.coins);
+			transaction.write(playerFrom.coins, from.subtract(amount));
+			transaction.write(playerTo.coins, to.add(amount));
+		});
+	}
+
+	/**
+	 * Moves every coin of playerFrom to playerTo, and returns how many moved.
+	 */
+	public BigInteger transferAll(Player playerFrom, Player playerTo) {
+		if (playerFrom == playerTo) {
+			return BigInteger.ZERO;
+		}
+		return stm.atomically(transaction -> {
+			var from = transaction.read(playerFrom.coins);
+			var to = transaction.read(playerTo.coins);
+			transaction.write(playerFrom.coins, BigInteger.ZERO);
+			transaction.write(playerTo.coins, to.add(from));
+			return from;
+		});
+	}
+
+	/**
+	 * Stress test, then a dummy benchmark against CoinTransfer (fixed lock
+	 * ordering), with a growing share of the transfers touching player 0, the
+	 * hot spot. The total of coins must never change.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		stress(threads);
+
+		var players = 100;
+		for (var hotShare : new double[] { 0.0, 0.5, 0.9 }) {
+			System.out.println("#### " + (int) (hotShare * 100) + "% of transfers touching the hot player");
+			for (int round = 1; round <= 2; round++) {
+				var locking = new CoinTransfer();
+				var lockedPlayers = new CoinTransfer.Player[players];
+				for (int i = 0; i < players; i++) {
+					lockedPlayers[i] = new CoinTransfer.Player();
+					lockedPlayers[i].setId(i);
+					lockedPlayers[i].setCoins(BigInteger.valueOf(1_000));
+				}
+				var lockMillis = run(threads, players, hotShare,
+						(from, to) -> locking.transferBetweenPlayers(lockedPlayers[from], lockedPlayers[to],
+								BigInteger.ONE));
+				var lockTotal = BigInteger.ZERO;
+				for (var player : lockedPlayers) {
+					synchronized (player) {
+						lockTotal = lockTotal.add(player.getCoins());
+					}
+				}
+
+				var transactional = new TransactionalCoinTransfer();
+				var stmPlayers = new Player[players];
+				for (int i = 0; i < players; i++) {
+					stmPlayers[i] = new Player(i, "player" + i, BigInteger.valueOf(1_000));
+				}
+				var stmMillis = run(threads, players, hotShare,
+						(from, to) -> transactional.transferBetweenPlayers(stmPlayers[from], stmPlayers[to],
+								BigInteger.ONE));
+				var stmTotal = BigInteger.ZERO;
+				for (var player : stmPlayers) {
+					stmTotal = stmTotal.add(player.getCoins());
+				}
+
+				System.out.println("lock ordering: " + lockMillis + " ms (total " + lockTotal + "), transactional: "
+						+ stmMillis + " ms (total " + stmTotal + ")");
+			}
+		}
+	}
+
+	/*
+	 * A few players with few coins, so the same values come back all the time:
+	 * zero-amount transfers (BigInteger returns the same instance), drains to
+	 * BigInteger.ZERO and small amounts going back and forth. An auditor reads
+	 * every balance in one transaction meanwhile; every total must match.
+	 */
+	private static void stress(int threads) throws InterruptedException {
+		var players = 4;
+		var initial = BigInteger.valueOf(3);
+		var expected = initial.multiply(BigInteger.valueOf(players));
+		for (int round = 1; round <= 3; round++) {
+			var transactional = new TransactionalCoinTransfer();
+			var stmPlayers = new Player[players];
+			for (int i = 0; i < players; i++) {
+				stmPlayers[i] = new Player(i, "player" + i, initial);
+			}
+			var running = new CountDownLatch(1);
+			var audits = new int[2]; // confined to the auditor until join
+			var auditor = new Thread(() -> {
+				while (running.getCount() > 0) {
+					var total = transactional.stm.atomically(transaction -> {
+						var sum = BigInteger.ZERO;
+						for (var player : stmPlayers) {
+							sum = sum.add(transaction.read(player.coins));
+						}
+						return sum;
+					});
+					audits[0]++;
+					if (!total.equals(expected)) {
+						audits[1]++;
+					}
+				}
+			});
+			auditor.start();
+			var millis = run(threads, players, 0.0, (from, to) -> {
+				var random = ThreadLocalRandom.current().nextInt(4);
+				if (random == 0) {
+					transactional.transferAll(stmPlayers[from], stmPlayers[to]);
+				} else {
+					transactional.transferBetweenPlayers(stmPlayers[from], stmPlayers[to],
+							BigInteger.valueOf(random - 1)); // 0, 1 or 2
+				}
+			});
+			running.countDown();
+			auditor.join();
+			var total = BigInteger.ZERO;
+			for (var player : stmPlayers) {
+				total = total.add(player.getCoins());
+			}
+			System.out.println("Stress round " + round + ": " + millis + " ms, final total " + total + " (expected "
+					+ expected + "), " + audits[0] + " audits, " + audits[1] + " wrong");
+		}
+		System.out.println();
+	}
+
+	private interface Transfer {
+		void transfer(int from, int to);
+	}
+
+	private static long run(int threads, int players, double hotShare, Transfer transfer)
+			throws InterruptedException {
+		var transfers = 200_000;
+		var done = new CountDownLatch(threads);
+		var before = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				var random = ThreadLocalRandom.current();
+				for (int i = 0; i < transfers; i++) {
+					var from = random.nextDouble() < hotShare ? 0 : random.nextInt(players);
+					var to = random.nextInt(players);
+					if (from == to) {
+						to = (to + 1) % players;
+					}
+					if (random.nextBoolean()) { // the hot player both pays and receives
+						transfer.transfer(from, to);
+					} else {
+						transfer.transfer(to, from);
+					}
+				}
+				done.countDown();
+			}).start();
+		}
+		done.await();
+		return (System.nanoTime() - before) / 1_000_000;
+	}
+
+}
@@ -0,0 +1,40 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Double Counter with a contention strategy
+ *
+ * The same counter as DoubleCounter, with its CAS loop run by a CasUpdater:
+ * between failed attempts the ContentionStrategy decides how long to wait, and
+ * the updater counts the retries, so the contention can be measured. Under
+ * little contention the plain loop of DoubleCounter is all it takes.
+ *
+ */
+@ThreadSafe
+public class BackoffDoubleCounter {
+
+	private final AtomicInteger value = new AtomicInteger(0);
+	private final CasUpdater updater;
+
+	public BackoffDoubleCounter(ContentionStrategy strategy) {
+		this.updater = new CasUpdater(strategy);
+	}
+
+	public void increase() {
+		updater.updateAndGet(value, old -> old + 2);
+	}
+
+	public int getValue() {
+		return value.get();
+	}
+
+	public CasUpdater getUpdater() {
+		return updater;
+	}
+
+}
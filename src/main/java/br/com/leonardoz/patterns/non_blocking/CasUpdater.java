@@ -0,0 +1,179 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongUnaryOperator;
+import java.util.function.UnaryOperator;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Reusable CAS update loop
+ *
+ * The read-compute-compareAndSet loop of DoubleCounter and NonBlockingDesign,
+ * written once:
+ *
+ * do { old = get(); updated = f(old); } while (!compareAndSet(old, updated));
+ *
+ * If the expected value (old) differs from what is actually present, some
+ * thread changed it in the mean time; the loop runs again until it succeeds.
+ * Between failed attempts the ContentionStrategy decides how long to wait.
+ *
+ * It also counts updates and failed attempts (retries), so the contention on
+ * a variable can be measured instead of guessed.
+ *
+ * The update function may run more than once, so it must be free of side
+ * effects.
+ *
+ */
+@ThreadSafe
+public class CasUpdater {
+
+	private final ContentionStrategy strategy;
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder retries = new LongAdder();
+
+	public CasUpdater(ContentionStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	public <V> V updateAndGet(AtomicReference<V> reference, UnaryOperator<V> updateFn) {
+		var failures = 0;
+		while (true) {
+			var old = reference.get();
+			var updated = updateFn.apply(old);
+			if (reference.compareAndSet(old, updated)) {
+				record(failures);
+				return updated;
+			}
+			strategy.backoff(++failures);
+		}
+	}
+
+	public int updateAndGet(AtomicInteger value, IntUnaryOperator updateFn) {
+		var failures = 0;
+		while (true) {
+			var old = value.get();
+			var updated = updateFn.applyAsInt(old);
+			if (value.compareAndSet(old, updated)) {
+				record(failures);
+				return updated;
+			}
+			strategy.backoff(++failures);
+		}
+	}
+
+	public long updateAndGet(AtomicLong value, LongUnaryOperator updateFn) {
+		var failures = 0;
+		while (true) {
+			var old = value.get();
+			var updated = updateFn.applyAsLong(old);
+			if (value.compareAndSet(old, updated)) {
+				record(failures);
+				return updated;
+			}
+			strategy.backoff(++failures);
+		}
+	}
+
+	private void record(int failures) {
+		updates.increment();
+		if (failures > 0) {
+			retries.add(failures);
+		}
+	}
+
+	public long getUpdates() {
+		return updates.sum();
+	}
+
+	public long getRetries() {
+		return retries.sum();
+	}
+
+	public double getRetriesPerUpdate() {
+		var count = updates.sum();
+		return count == 0 ? 0.0 : (double) retries.sum() / count;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("updates=%d, retries=%d (%.2f per update)", getUpdates(), getRetries(),
+				getRetriesPerUpdate());
+	}
+
+	/**
+	 * Dummy benchmark: the plain DoubleCounter loop, then the same counter under
+	 * each strategy, and a counter getting as many +1 as -1 under each strategy
+	 * and with elimination (EliminatingLong), from 1 thread to twice the
+	 * processors.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var strategies = new String[] { "none", "spin", "backoff" };
+		var maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			System.out.println("#### " + threads + " thread(s)");
+			var plain = new DoubleCounter();
+			run("DoubleCounter (plain loop)", threads, i -> plain.increase(), null);
+			for (var name : strategies) {
+				var counter = new BackoffDoubleCounter(strategyNamed(name));
+				run("BackoffDoubleCounter/" + name, threads, i -> counter.increase(), counter.getUpdater());
+
+				var updater = new CasUpdater(strategyNamed(name));
+				var balance = new AtomicLong();
+				run("+1/-1 adds/" + name, threads, i -> updater.updateAndGet(balance, old -> old + (i % 2 == 0 ? 1 : -1)),
+						updater);
+			}
+			var eliminating = new EliminatingLong(0);
+			run("+1/-1 adds/elimination", threads, i -> eliminating.add(i % 2 == 0 ? 1 : -1), null);
+			System.out.println("  " + eliminating);
+			System.out.println();
+		}
+	}
+
+	private static ContentionStrategy strategyNamed(String name) {
+		switch (name) {
+		case "spin":
+			return ContentionStrategy.spin();
+		case "backoff":
+			return ContentionStrategy.exponentialBackoff();
+		default:
+			return ContentionStrategy.none();
+		}
+	}
+
+	private static void run(String name, int threads, IntConsumer operation, CasUpdater updater)
+			throws InterruptedException {
+		var operations = 2_000_000;
+		var start = new CountDownLatch(1);
+		var done = new CountDownLatch(threads);
+		for (int t = 0; t < threads; t++) {
+			var offset = t; // so half of the threads start with -1
+			new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int i = 0; i < operations; i++) {
+					operation.accept(i + offset);
+				}
+				done.countDown();
+			}).start();
+		}
+		var before = System.nanoTime();
+		start.countDown();
+		done.await();
+		var millis = Math.max(1, (System.nanoTime() - before) / 1_000_000);
+		System.out.println(name + ": " + millis + " ms, " + ((long) threads * operations / millis) + " ops/ms"
+				+ (updater == null ? "" : ", " + updater));
+	}
+
+}
@@ -0,0 +1,74 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Contention strategies for CAS loops
+ *
+ * What a thread does after losing a compareAndSet race. Retrying right away
+ * is fine when contention is low, but with many threads on the same variable
+ * most retries fail again, burning CPU and bouncing the cache line between
+ * cores. Waiting a little makes the next attempt more likely to succeed.
+ *
+ * - none: retry immediately.
+ *
+ * - spin: Thread.onSpinWait(), a hint that lets the processor save power and
+ * give the other hardware thread of the core a chance.
+ *
+ * - exponential backoff: parks for a random time, whose upper bound doubles at
+ * each failure (up to a maximum). Randomness keeps the losers from colliding
+ * again at the same moment.
+ *
+ * Elimination (opposite additions cancelling each other) is not a strategy:
+ * it must only pair updates of the same variable, so it lives with the
+ * variable, in EliminatingLong.
+ *
+ */
+public interface ContentionStrategy {
+
+	/*
+	 * Called after the given number of consecutive failed attempts.
+	 */
+	void backoff(int failures);
+
+	static ContentionStrategy none() {
+		return failures -> {
+		};
+	}
+
+	static ContentionStrategy spin() {
+		return failures -> Thread.onSpinWait();
+	}
+
+	static ContentionStrategy exponentialBackoff() {
+		return exponentialBackoff(100, 100_000);
+	}
+
+	static ContentionStrategy exponentialBackoff(long minNanos, long maxNanos) {
+		return new ExponentialBackoff(minNanos, maxNanos);
+	}
+
+	final class ExponentialBackoff implements ContentionStrategy {
+		private final long minNanos;
+		private final long maxNanos;
+
+		ExponentialBackoff(long minNanos, long maxNanos) {
+			if (minNanos <= 0 || maxNanos < minNanos) {
+				throw new IllegalArgumentException("Invalid backoff limits");
+			}
+			this.minNanos = minNanos;
+			this.maxNanos = maxNanos;
+		}
+
+		@Override
+		public void backoff(int failures) {
+			var shift = Math.min(failures - 1, 20);
+			var limit = Math.min(maxNanos, minNanos << shift);
+			LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(minNanos, limit + 1));
+		}
+	}
+
+}
@@ -0,0 +1,124 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Counter with elimination
+ *
+ * A counter that receives as many additions as subtractions (a balance, a
+ * number of items in flight) spends most of its time on updates that cancel
+ * out. After a failed compareAndSet, a thread adding +x looks for a thread
+ * adding -x in a small array of exchange slots: if it finds one, both updates
+ * are done, without touching the contended value. Other failures back off
+ * with the ContentionStrategy.
+ *
+ * The slots belong to this counter: an update can only be cancelled by an
+ * opposite update of the same counter, never of another one.
+ *
+ */
+@ThreadSafe
+public class EliminatingLong {
+
+	private static final int WAIT_SPINS = 64;
+
+	/*
+	 * An offer of an update; taken by whoever cancels it.
+	 */
+	private static final class Offer {
+		final long delta;
+
+		Offer(long delta) {
+			this.delta = delta;
+		}
+	}
+
+	private final AtomicLong value;
+	private final AtomicReferenceArray<Offer> slots;
+	private final ContentionStrategy strategy;
+	private final LongAdder updates = new LongAdder();
+	private final LongAdder eliminated = new LongAdder();
+
+	public EliminatingLong(long initialValue) {
+		this(initialValue, Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+				ContentionStrategy.exponentialBackoff());
+	}
+
+	public EliminatingLong(long initialValue, int slots, ContentionStrategy strategy) {
+		this.value = new AtomicLong(initialValue);
+		this.slots = new AtomicReferenceArray<>(slots);
+		this.strategy = strategy;
+	}
+
+	/*
+	 * Doesn't return the new value: an eliminated update never has one.
+	 */
+	public void add(long delta) {
+		var failures = 0;
+		while (true) {
+			var old = value.get();
+			if (value.compareAndSet(old, old + delta)) {
+				updates.increment();
+				return;
+			}
+			if (tryEliminate(delta)) {
+				updates.increment();
+				eliminated.increment();
+				return;
+			}
+			strategy.backoff(++failures);
+		}
+	}
+
+	public long get() {
+		return value.get();
+	}
+
+	/*
+	 * True if an opposite update took this one (or this one took it): both are
+	 * done and none must be applied to the value.
+	 */
+	private boolean tryEliminate(long delta) {
+		if (delta == 0 || delta == Long.MIN_VALUE) {
+			return delta == 0; // nothing to do, or no opposite value
+		}
+		var index = ThreadLocalRandom.current().nextInt(slots.length());
+		var waiting = slots.get(index);
+		if (waiting != null) {
+			// someone is waiting: cancel it if it's our opposite
+			return waiting.delta == -delta && slots.compareAndSet(index, waiting, null);
+		}
+		var mine = new Offer(delta);
+		if (!slots.compareAndSet(index, null, mine)) {
+			return false;
+		}
+		for (int i = 0; i < WAIT_SPINS; i++) {
+			if (slots.get(index) != mine) {
+				return true; // taken by an opposite update
+			}
+			Thread.onSpinWait();
+		}
+		// withdraw; if it fails someone took it in the meantime
+		return !slots.compareAndSet(index, mine, null);
+	}
+
+	public long getUpdates() {
+		return updates.sum();
+	}
+
+	public long getEliminated() {
+		return eliminated.sum();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("value=%d, updates=%d, eliminated=%d", get(), getUpdates(), getEliminated());
+	}
+
+}
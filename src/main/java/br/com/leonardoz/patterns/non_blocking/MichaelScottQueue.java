@@ -0,0 +1,126 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Michael-Scott Queue
+ *
+ * A lock-free FIFO queue: a linked list with a dummy (sentinel) node, a head
+ * and a tail, all changed with compareAndSet.
+ *
+ * Adding a node takes two steps: link it after the last node, then move the
+ * tail to it. Between both steps the queue is in an intermediate state (the
+ * tail is lagging one node behind). Any thread that sees it finishes the work
+ * of the other one, moving the tail forward before trying its own operation,
+ * so a stalled thread never blocks the others.
+ *
+ * Linearization points: for offer, the CAS linking the new node; for poll, the
+ * CAS moving the head (or reading a null next, when empty).
+ *
+ * This is the algorithm behind ConcurrentLinkedQueue.
+ *
+ */
+@ThreadSafe
+public class MichaelScottQueue<E> {
+
+	private static final class Node<E> {
+		final E item;
+		final AtomicReference<Node<E>> next = new AtomicReference<>();
+
+		Node(E item) {
+			this.item = item;
+		}
+	}
+
+	private final AtomicReference<Node<E>> head;
+	private final AtomicReference<Node<E>> tail;
+
+	public MichaelScottQueue() {
+		var sentinel = new Node<E>(null);
+		this.head = new AtomicReference<>(sentinel);
+		this.tail = new AtomicReference<>(sentinel);
+	}
+
+	public void offer(E item) {
+		if (item == null) {
+			throw new NullPointerException("Null items are not supported");
+		}
+		var node = new Node<>(item);
+		while (true) {
+			var last = tail.get();
+			var next = last.next.get();
+			if (last != tail.get()) {
+				continue; // tail moved while reading
+			}
+			if (next == null) {
+				// tail really is the last node: try to link the new node after it
+				if (last.next.compareAndSet(null, node)) {
+					tail.compareAndSet(last, node); // fails if someone helped already
+					return;
+				}
+			} else {
+				// intermediate state: helps moving the tail and tries again
+				tail.compareAndSet(last, next);
+			}
+		}
+	}
+
+	/*
+	 * Removes the first item, or returns null if the queue is empty.
+	 */
+	public E poll() {
+		while (true) {
+			var first = head.get();
+			var last = tail.get();
+			var next = first.next.get();
+			if (first != head.get()) {
+				continue;
+			}
+			if (next == null) {
+				return null; // only the sentinel
+			}
+			if (first == last) {
+				// not empty, but the tail is lagging: help it first
+				tail.compareAndSet(last, next);
+				continue;
+			}
+			// next becomes the new sentinel; its item is the one being removed
+			if (head.compareAndSet(first, next)) {
+				return next.item;
+			}
+		}
+	}
+
+	public E peek() {
+		var next = head.get().next.get();
+		return next == null ? null : next.item;
+	}
+
+	public boolean isEmpty() {
+		return head.get().next.get() == null;
+	}
+
+	/**
+	 * Stress harness (every item consumed exactly once, in order per producer)
+	 * and dummy benchmark against ConcurrentLinkedQueue.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		var perProducer = 1_000_000;
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			var queue = new MichaelScottQueue<Integer>();
+			TreiberStack.stress("MichaelScottQueue", threads, perProducer, queue::offer, queue::poll, true);
+			var jdkQueue = new ConcurrentLinkedQueue<Integer>();
+			TreiberStack.stress("ConcurrentLinkedQueue", threads, perProducer, jdkQueue::offer, jdkQueue::poll,
+					true);
+			System.out.println();
+		}
+	}
+
+}
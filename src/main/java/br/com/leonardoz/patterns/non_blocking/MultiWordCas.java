@@ -0,0 +1,302 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Multi-word compare-and-swap (k-CAS)
+ *
+ * NonBlockingDesign limits atomic changes to a single variable. This extends
+ * the compareAndSet idea to several cells at once: either every cell holds its
+ * expected value and all of them are changed, or nothing changes.
+ *
+ * How it works (descriptor-based, after Harris, Fraser and Pratt):
+ *
+ * 1. A descriptor describing the whole operation (cells, expected and new
+ * values, status UNDECIDED) is installed in each cell, one by one, with a
+ * regular CAS. Cells are always visited in the same global order.
+ *
+ * 2. If every cell was installed the status becomes SUCCEEDED; if some cell
+ * didn't hold its expected value, FAILED. This single CAS on the status is
+ * the linearization point.
+ *
+ * 3. Each descriptor is replaced by the new value (success) or the old one
+ * (failure).
+ *
+ * A thread that finds a descriptor in a cell doesn't wait for its owner: it
+ * helps, running the same steps for that descriptor. So a stalled thread
+ * never blocks the others, which makes the algorithm lock-free.
+ *
+ * Every value written to a cell is wrapped in a new Box, and boxes are never
+ * reused. A helper installs the descriptor with a CAS against the box it read
+ * while the status was still UNDECIDED (the status is checked after reading
+ * the box, not before). If the operation was decided in the meantime, that box
+ * is gone: a success replaced it with the descriptor, so the CAS fails even if
+ * the cell changed and changed back to an equal value (ABA). A late install
+ * after a failure only replaces the box by one with the same value.
+ *
+ * Values are compared by identity (==), like AtomicReference does.
+ *
+ */
+public class MultiWordCas {
+
+	private static final AtomicLong CELL_IDS = new AtomicLong();
+
+	private static final int UNDECIDED = 0;
+	private static final int SUCCEEDED = 1;
+	private static final int FAILED = 2;
+
+	private static final class Box<T> {
+		final T value;
+
+		Box(T value) {
+			this.value = value;
+		}
+	}
+
+	/**
+	 * An AtomicReference-like cell that can take part in a multi-word CAS.
+	 */
+	@ThreadSafe
+	public static final class Cell<T> {
+		private final long id = CELL_IDS.incrementAndGet(); // global order of installation
+		private final AtomicReference<Object> content; // a Box or a Descriptor
+
+		public Cell(T initialValue) {
+			this.content = new AtomicReference<>(new Box<>(initialValue));
+		}
+
+		@SuppressWarnings("unchecked")
+		public T get() {
+			while (true) {
+				var current = content.get();
+				if (current instanceof Box) {
+					return ((Box<T>) current).value;
+				}
+				((Descriptor) current).help(); // finishes it, then reads again
+			}
+		}
+
+		public boolean compareAndSet(T expected, T newValue) {
+			return MultiWordCas.compareAndSet(new Cell<?>[] { this }, new Object[] { expected },
+					new Object[] { newValue });
+		}
+
+		public void set(T newValue) {
+			while (true) {
+				var current = content.get();
+				if (current instanceof Descriptor) {
+					((Descriptor) current).help();
+				} else if (content.compareAndSet(current, new Box<>(newValue))) {
+					return;
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return String.valueOf(get());
+		}
+	}
+
+	private static final class Descriptor {
+		final Cell<?>[] cells; // sorted by id
+		final Object[] expected;
+		final Object[] newValues;
+		final AtomicInteger status = new AtomicInteger(UNDECIDED);
+
+		Descriptor(Cell<?>[] cells, Object[] expected, Object[] newValues) {
+			this.cells = cells;
+			this.expected = expected;
+			this.newValues = newValues;
+		}
+
+		/*
+		 * Runs the operation to its end; any thread may call it, many times.
+		 */
+		boolean help() {
+			if (status.get() == UNDECIDED) {
+				var outcome = install() ? SUCCEEDED : FAILED;
+				status.compareAndSet(UNDECIDED, outcome);
+			}
+			var succeeded = status.get() == SUCCEEDED;
+			for (int i = 0; i < cells.length; i++) {
+				cells[i].content.compareAndSet(this, new Box<>(succeeded ? newValues[i] : expected[i]));
+			}
+			return succeeded;
+		}
+
+		/*
+		 * Phase 1: places this descriptor in every cell. False as soon as a cell
+		 * holds something else than expected.
+		 */
+		private boolean install() {
+			for (int i = 0; i < cells.length; i++) {
+				var cell = cells[i];
+				while (true) {
+					var current = cell.content.get();
+					// only after reading current: the box was there while undecided
+					if (status.get() != UNDECIDED) {
+						return status.get() == SUCCEEDED;
+					}
+					if (current == this) {
+						break; // installed by someone helping us
+					}
+					if (current instanceof Descriptor) {
+						((Descriptor) current).help(); // get the other operation out of the way
+						continue;
+					}
+					if (((Box<?>) current).value != expected[i]) {
+						return false;
+					}
+					if (cell.content.compareAndSet(current, this)) {
+						break;
+					}
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Atomically sets every cell to its new value if all of them hold their
+	 * expected values. Returns false, changing nothing, otherwise.
+	 */
+	public static boolean compareAndSet(Cell<?>[] cells, Object[] expected, Object[] newValues) {
+		if (cells.length != expected.length || cells.length != newValues.length) {
+			throw new IllegalArgumentException("cells, expected and newValues must have the same length");
+		}
+		// insertion sort of the indexes by cell id: operations touch few cells
+		var order = new int[cells.length];
+		for (int i = 0; i < order.length; i++) {
+			var j = i;
+			while (j > 0 && cells[order[j - 1]].id > cells[i].id) {
+				order[j] = order[j - 1];
+				j--;
+			}
+			order[j] = i;
+		}
+		var sortedCells = new Cell<?>[cells.length];
+		var sortedExpected = new Object[cells.length];
+		var sortedNew = new Object[cells.length];
+		for (int i = 0; i < order.length; i++) {
+			if (i > 0 && cells[order[i]] == cells[order[i - 1]]) {
+				throw new IllegalArgumentException("The same cell appears twice");
+			}
+			sortedCells[i] = cells[order[i]];
+			sortedExpected[i] = expected[order[i]];
+			sortedNew[i] = newValues[order[i]];
+		}
+		return new Descriptor(sortedCells, sortedExpected, sortedNew).help();
+	}
+
+	/**
+	 * Stress test and dummy benchmark.
+	 *
+	 * Threads move amounts between random accounts (2-CAS) while an auditor
+	 * reads all of them atomically (a k-CAS writing back the same values): the
+	 * total must never change. Then the same transfers are timed against a
+	 * single intrinsic lock (the AtomicCompoundActions way).
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var accounts = 16;
+		var initial = 1_000L;
+		var threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		var transfers = 200_000;
+
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			Cell<Long>[] cells = new Cell[accounts];
+			for (int i = 0; i < accounts; i++) {
+				cells[i] = new Cell<>(initial);
+			}
+			var audits = new AtomicInteger();
+			var wrongAudits = new AtomicInteger();
+			var running = new AtomicInteger(threads);
+			var auditor = new Thread(() -> {
+				while (running.get() > 0) {
+					var values = new Object[accounts];
+					for (int i = 0; i < accounts; i++) {
+						values[i] = cells[i].get();
+					}
+					if (compareAndSet(cells, values, values)) { // nothing changed while reading
+						var total = 0L;
+						for (var value : values) {
+							total += (Long) value;
+						}
+						audits.incrementAndGet();
+						if (total != accounts * initial) {
+							wrongAudits.incrementAndGet();
+						}
+					}
+				}
+			});
+			auditor.start();
+			var millis = time(threads, transfers, () -> {
+				var random = ThreadLocalRandom.current();
+				var from = random.nextInt(accounts);
+				var to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+				while (true) {
+					var fromBalance = cells[from].get();
+					var toBalance = cells[to].get();
+					var amount = random.nextLong(10);
+					if (compareAndSet(new Cell<?>[] { cells[from], cells[to] },
+							new Object[] { fromBalance, toBalance },
+							new Object[] { fromBalance - amount, toBalance + amount })) {
+						return;
+					}
+				}
+			}, running);
+			auditor.join();
+			var total = 0L;
+			for (var cell : cells) {
+				total += cell.get();
+			}
+			System.out.println("k-CAS: " + millis + " ms, final total " + total + " (expected " + accounts * initial
+					+ "), " + audits.get() + " consistent audits, " + wrongAudits.get() + " wrong");
+
+			var balances = new long[accounts];
+			Arrays.fill(balances, initial);
+			var lock = new Object();
+			var lockMillis = time(threads, transfers, () -> {
+				var random = ThreadLocalRandom.current();
+				var from = random.nextInt(accounts);
+				var to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+				var amount = random.nextLong(10);
+				synchronized (lock) {
+					balances[from] -= amount;
+					balances[to] += amount;
+				}
+			}, new AtomicInteger(threads));
+			System.out.println("synchronized: " + lockMillis + " ms, final total " + Arrays.stream(balances).sum());
+			System.out.println();
+		}
+	}
+
+	private static long time(int threads, int operations, Runnable operation, AtomicInteger running)
+			throws InterruptedException {
+		var done = new CountDownLatch(threads);
+		var before = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				for (int i = 0; i < operations; i++) {
+					operation.run();
+				}
+				running.decrementAndGet();
+				done.countDown();
+			}).start();
+		}
+		done.await();
+		return (System.nanoTime() - before) / 1_000_000;
+	}
+
+}
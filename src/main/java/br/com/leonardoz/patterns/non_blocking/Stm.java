@@ -0,0 +1,191 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Software transactional memory on top of multi-word CAS
+ *
+ * Shared state lives in Refs. A transaction reads and writes Refs freely,
+ * without any lock: reads are remembered with the value seen, writes are kept
+ * in the transaction and invisible to others. At the end, one MultiWordCas
+ * commits everything: every Ref read must still hold the value seen, and every
+ * Ref written gets its new value, all at once. If another transaction changed
+ * something in the meantime the commit fails, nothing is applied, and the
+ * transaction runs again from the start.
+ *
+ * Each new read also checks that the earlier ones still hold, so an attempt
+ * that is already doomed is abandoned early instead of going on with values
+ * from different moments (e.g. a total that doesn't add up).
+ *
+ * Since there are no locks there is no lock order to get right and no
+ * deadlock; a stalled transaction never blocks the others. The price is
+ * wasted work when transactions conflict often, which the ContentionStrategy
+ * (backoff between attempts) keeps in check.
+ *
+ * A transaction may run several times, so it must not have side effects other
+ * than on Refs. Values are compared by identity: write new (immutable) values,
+ * never change the ones read.
+ *
+ */
+@ThreadSafe
+public class Stm {
+
+	/**
+	 * A transactional variable.
+	 */
+	@ThreadSafe
+	public static final class Ref<T> {
+		private final MultiWordCas.Cell<T> cell;
+
+		public Ref(T initialValue) {
+			this.cell = new MultiWordCas.Cell<>(initialValue);
+		}
+
+		/*
+		 * The committed value, outside any transaction.
+		 */
+		public T get() {
+			return cell.get();
+		}
+	}
+
+	private static final Object NOT_READ = new Object();
+
+	/*
+	 * Thrown to abandon an attempt that can't commit; never leaves atomically.
+	 */
+	private static final class Conflict extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private static final Conflict INSTANCE = new Conflict();
+
+		private Conflict() {
+			super(null, null, false, false);
+		}
+	}
+
+	/**
+	 * One attempt of a transaction; confined to the thread running it.
+	 *
+	 * Transactions touch few Refs, so they are kept in small arrays searched
+	 * linearly, cheaper than maps at these sizes.
+	 */
+	public static final class Transaction {
+		private Ref<?>[] refs = new Ref<?>[4];
+		private Object[] seen = new Object[4]; // value read, or NOT_READ for blind writes
+		private Object[] values = new Object[4]; // value to commit
+		private int size;
+
+		private Transaction() {
+		}
+
+		@SuppressWarnings("unchecked")
+		public <T> T read(Ref<T> ref) {
+			var index = indexOf(ref);
+			if (index >= 0) {
+				return (T) values[index];
+			}
+			var value = ref.cell.get();
+			add(ref, value);
+			validate();
+			return value;
+		}
+
+		public <T> void write(Ref<T> ref, T value) {
+			var index = indexOf(ref);
+			if (index >= 0) {
+				values[index] = value;
+			} else {
+				add(ref, NOT_READ);
+				values[size - 1] = value;
+			}
+		}
+
+		private int indexOf(Ref<?> ref) {
+			for (int i = 0; i < size; i++) {
+				if (refs[i] == ref) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		private void add(Ref<?> ref, Object value) {
+			if (size == refs.length) {
+				refs = Arrays.copyOf(refs, size * 2);
+				seen = Arrays.copyOf(seen, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			refs[size] = ref;
+			seen[size] = value;
+			values[size] = value;
+			size++;
+		}
+
+		private void validate() {
+			for (int i = 0; i < size; i++) {
+				if (seen[i] != NOT_READ && refs[i].cell.get() != seen[i]) {
+					throw Conflict.INSTANCE;
+				}
+			}
+		}
+
+		private boolean commit() {
+			if (size == 1 && seen[0] != NOT_READ && values[0] == seen[0]) {
+				return true; // a single read is atomic by itself
+			}
+			var cells = new MultiWordCas.Cell<?>[size];
+			var expected = new Object[size];
+			for (int i = 0; i < size; i++) {
+				cells[i] = refs[i].cell;
+				expected[i] = seen[i] == NOT_READ ? refs[i].cell.get() : seen[i]; // blind writes expect anything
+			}
+			return MultiWordCas.compareAndSet(cells, expected, Arrays.copyOf(values, size));
+		}
+	}
+
+	private final ContentionStrategy strategy;
+
+	public Stm() {
+		this(ContentionStrategy.exponentialBackoff());
+	}
+
+	public Stm(ContentionStrategy strategy) {
+		this.strategy = strategy;
+	}
+
+	/**
+	 * Runs the transaction until it commits, and returns its result.
+	 */
+	public <R> R atomically(Function<Transaction, R> transaction) {
+		var failures = 0;
+		while (true) {
+			var attempt = new Transaction();
+			try {
+				var result = transaction.apply(attempt);
+				if (attempt.commit()) {
+					return result;
+				}
+			} catch (Conflict conflict) {
+				// another transaction got there first
+			}
+			strategy.backoff(++failures);
+		}
+	}
+
+	/*
+	 * For transactions without a result.
+	 */
+	public void run(Consumer<Transaction> transaction) {
+		atomically(attempt -> {
+			transaction.accept(attempt);
+			return null;
+		});
+	}
+
+}
@@ -0,0 +1,223 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: Treiber Stack with elimination
+ *
+ * A lock-free stack: the top is an AtomicReference to an immutable-ish linked
+ * list of nodes. push and pop read the top, prepare the change and publish it
+ * with compareAndSet, retrying if some other thread got there first. Each
+ * successful CAS is the linearization point of the operation.
+ *
+ * Under contention every thread fights for the same top. But a push followed
+ * by a pop leaves the stack as it was, so when a CAS fails, a push can offer
+ * its node in an elimination array and a pop can take it from there: both
+ * complete without touching the top at all.
+ *
+ * There is no ABA problem here: nodes are never reused, and the garbage
+ * collector won't free a node while some thread still references it.
+ *
+ */
+@ThreadSafe
+public class TreiberStack<E> {
+
+	private static final int ELIMINATION_SPINS = 128;
+
+	private static final class Node<E> {
+		final E item;
+		Node<E> next;
+
+		Node(E item) {
+			this.item = item;
+		}
+	}
+
+	private final AtomicReference<Node<E>> top = new AtomicReference<>();
+	private final AtomicReferenceArray<Node<E>> elimination;
+
+	public TreiberStack() {
+		this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+	}
+
+	public TreiberStack(int eliminationWidth) {
+		this.elimination = new AtomicReferenceArray<>(eliminationWidth);
+	}
+
+	public void push(E item) {
+		if (item == null) {
+			throw new NullPointerException("Null items are not supported");
+		}
+		var node = new Node<>(item);
+		while (true) {
+			var oldTop = top.get();
+			node.next = oldTop;
+			if (top.compareAndSet(oldTop, node)) {
+				return;
+			}
+			if (offer(node)) {
+				return; // a pop took it
+			}
+		}
+	}
+
+	/*
+	 * Removes the top item, or returns null if the stack is empty.
+	 */
+	public E pop() {
+		while (true) {
+			var oldTop = top.get();
+			if (oldTop == null) {
+				return null;
+			}
+			if (top.compareAndSet(oldTop, oldTop.next)) {
+				return oldTop.item;
+			}
+			var eliminated = take();
+			if (eliminated != null) {
+				return eliminated.item;
+			}
+		}
+	}
+
+	public E peek() {
+		var current = top.get();
+		return current == null ? null : current.item;
+	}
+
+	public boolean isEmpty() {
+		return top.get() == null;
+	}
+
+	/*
+	 * Leaves the node in a slot for a while; true if some pop took it.
+	 */
+	private boolean offer(Node<E> node) {
+		var slot = ThreadLocalRandom.current().nextInt(elimination.length());
+		if (!elimination.compareAndSet(slot, null, node)) {
+			return false;
+		}
+		for (int i = 0; i < ELIMINATION_SPINS; i++) {
+			if (elimination.get(slot) != node) {
+				return true;
+			}
+			Thread.onSpinWait();
+		}
+		return !elimination.compareAndSet(slot, node, null);
+	}
+
+	/*
+	 * Takes a node offered by a concurrent push, if there is one.
+	 */
+	private Node<E> take() {
+		var slot = ThreadLocalRandom.current().nextInt(elimination.length());
+		var node = elimination.get(slot);
+		if (node != null && elimination.compareAndSet(slot, node, null)) {
+			return node;
+		}
+		return null;
+	}
+
+	/**
+	 * Stress harness and dummy benchmark against ConcurrentLinkedDeque.
+	 *
+	 * Producers push unique numbers while consumers pop; at the end every number
+	 * must have been popped exactly once.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		var perProducer = 1_000_000;
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			var stack = new TreiberStack<Integer>();
+			stress("TreiberStack", threads, perProducer, stack::push, stack::pop, false);
+			var deque = new ConcurrentLinkedDeque<Integer>();
+			stress("ConcurrentLinkedDeque", threads, perProducer, deque::push, deque::pollFirst, false);
+			System.out.println();
+		}
+	}
+
+	/*
+	 * When fifo is true it also checks that every consumer sees the items of
+	 * each producer in the order they were produced.
+	 */
+	static void stress(String name, int threads, int perProducer, Consumer<Integer> put, Supplier<Integer> take,
+			boolean fifo) throws InterruptedException {
+		var producers = threads / 2;
+		var consumers = threads - producers;
+		var total = producers * perProducer;
+		var seen = new AtomicIntegerArray(total);
+		var start = new CountDownLatch(1);
+		var done = new CountDownLatch(threads);
+		var consumed = new AtomicInteger();
+		var outOfOrder = new AtomicInteger();
+
+		for (int p = 0; p < producers; p++) {
+			var first = p * perProducer;
+			new Thread(() -> {
+				await(start);
+				for (int i = 0; i < perProducer; i++) {
+					put.accept(first + i);
+				}
+				done.countDown();
+			}).start();
+		}
+		for (int c = 0; c < consumers; c++) {
+			new Thread(() -> {
+				await(start);
+				var last = new int[producers];
+				Arrays.fill(last, -1);
+				while (consumed.get() < total) {
+					var item = take.get();
+					if (item != null) {
+						seen.incrementAndGet(item);
+						consumed.incrementAndGet();
+						var producer = item / perProducer;
+						if (fifo && item <= last[producer]) {
+							outOfOrder.incrementAndGet();
+						}
+						last[producer] = item;
+					}
+				}
+				done.countDown();
+			}).start();
+		}
+
+		var before = System.nanoTime();
+		start.countDown();
+		done.await();
+		var millis = (System.nanoTime() - before) / 1_000_000;
+
+		var errors = 0;
+		for (int i = 0; i < total; i++) {
+			if (seen.get(i) != 1) {
+				errors++;
+			}
+		}
+		System.out.println(name + ": " + total + " items through " + producers + " producers and " + consumers
+				+ " consumers in " + millis + " ms, " + (errors == 0 ? "OK" : errors + " ERRORS")
+				+ (fifo ? ", out of order: " + outOfOrder.get() : ""));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package br.com.leonardoz.patterns.non_blocking;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+/**
+ * Pattern: Non-blocking Design
+ *
+ * Example: VarHandle instead of AtomicReference
+ *
+ * NonBlockingDesign keeps its state in an AtomicReference: one more object per
+ * holder (header + field) and one more pointer to follow on every read and
+ * CAS. With millions of small holders that is a lot of memory.
+ *
+ * A VarHandle gives the same atomic operations over a plain field of the
+ * holder itself, so the state is embedded and no extra object exists. It also
+ * lets each access choose how much ordering it needs:
+ *
+ * - plain: like a normal field, no ordering (single-threaded phases only).
+ *
+ * - opaque: always reads/writes memory, never reordered with other opaque
+ * accesses to the same variable; no ordering with other variables. Good for
+ * progress flags and statistics.
+ *
+ * - acquire/release: a release write publishes everything written before it
+ * to any thread that reads the value with an acquire read. Enough for most
+ * publication idioms and cheaper than volatile on some processors.
+ *
+ * - volatile: sequentially consistent, the same as a volatile field and as
+ * AtomicReference#get/set.
+ *
+ * This is how the JDK itself implements its concurrent classes.
+ *
+ */
+public class VarHandleNonBlockingDesign {
+
+	private static final VarHandle VALUE;
+
+	static {
+		try {
+			VALUE = MethodHandles.lookup().findVarHandle(VarHandleNonBlockingDesign.class, "value", Object.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	@SuppressWarnings("unused") // accessed through VALUE
+	private volatile Object value = new Object();
+
+	public void modifyValue() {
+		Object updatedValue;
+		Object old;
+		do {
+			old = VALUE.getVolatile(this); // get value
+			updatedValue = newObject(); // new updated value
+		} while (!VALUE.compareAndSet(this, old, updatedValue));
+	}
+
+	public Object getValue() {
+		return VALUE.getVolatile(this);
+	}
+
+	public Object getPlain() {
+		return VALUE.get(this);
+	}
+
+	public void setPlain(Object newValue) {
+		VALUE.set(this, newValue);
+	}
+
+	public Object getOpaque() {
+		return VALUE.getOpaque(this);
+	}
+
+	public void setOpaque(Object newValue) {
+		VALUE.setOpaque(this, newValue);
+	}
+
+	public Object getAcquire() {
+		return VALUE.getAcquire(this);
+	}
+
+	public void setRelease(Object newValue) {
+		VALUE.setRelease(this, newValue);
+	}
+
+	public Object getVolatile() {
+		return VALUE.getVolatile(this);
+	}
+
+	public void setVolatile(Object newValue) {
+		VALUE.setVolatile(this, newValue);
+	}
+
+	public boolean compareAndSet(Object expected, Object newValue) {
+		return VALUE.compareAndSet(this, expected, newValue);
+	}
+
+	/*
+	 * May fail spuriously, so only for retry loops; cheaper on some processors.
+	 */
+	public boolean weakCompareAndSetRelease(Object expected, Object newValue) {
+		return VALUE.weakCompareAndSetRelease(this, expected, newValue);
+	}
+
+	/*
+	 * Modified value...
+	 */
+	public Object newObject() {
+		return new Object();
+	}
+
+	/**
+	 * Dummy footprint measurement and throughput benchmark against
+	 * NonBlockingDesign, the same plain CAS loop over an AtomicReference: the
+	 * only difference measured is where the state lives.
+	 *
+	 * Footprint: heap used after allocating 1M holders of each kind (the shared
+	 * initial objects are counted too; what matters is the difference).
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var holders = 1_000_000;
+		System.out.println("AtomicReference holders: " + footprint(holders, NonBlockingDesign::new) / holders
+				+ " bytes each");
+		System.out.println("VarHandle holders: " + footprint(holders, VarHandleNonBlockingDesign::new) / holders
+				+ " bytes each");
+		System.out.println();
+
+		var threads = Runtime.getRuntime().availableProcessors();
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			var atomic = new NonBlockingDesign();
+			throughput("AtomicReference", threads, atomic::modifyValue, atomic::getValue);
+			var varHandle = new VarHandleNonBlockingDesign();
+			throughput("VarHandle", threads, varHandle::modifyValue, varHandle::getValue);
+			System.out.println();
+		}
+	}
+
+	private static long footprint(int count, Supplier<Object> factory) {
+		var runtime = Runtime.getRuntime();
+		gc();
+		var before = runtime.totalMemory() - runtime.freeMemory();
+		var keep = new Object[count];
+		for (int i = 0; i < count; i++) {
+			keep[i] = factory.get();
+		}
+		gc();
+		var after = runtime.totalMemory() - runtime.freeMemory();
+		if (keep[count - 1] == null) { // keeps the array reachable until here
+			throw new IllegalStateException();
+		}
+		return after - before;
+	}
+
+	private static void gc() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/*
+	 * One thread modifying, the others reading, for a fixed number of operations.
+	 */
+	private static void throughput(String name, int threads, Runnable write, Supplier<Object> read)
+			throws InterruptedException {
+		var operations = 5_000_000;
+		var done = new CountDownLatch(threads + 1);
+		var before = System.nanoTime();
+		new Thread(() -> {
+			for (int i = 0; i < operations; i++) {
+				write.run();
+			}
+			done.countDown();
+		}).start();
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				var nulls = 0;
+				for (int i = 0; i < operations; i++) {
+					if (read.get() == null) {
+						nulls++;
+					}
+				}
+				if (nulls > 0) {
+					System.out.println("unexpected null");
+				}
+				done.countDown();
+			}).start();
+		}
+		done.await();
+		var millis = Math.max(1, (System.nanoTime() - before) / 1_000_000);
+		System.out.println(name + ": 1 writer and " + threads + " reader(s), " + operations
+				+ " operations each in " + millis + " ms");
+	}
+
+}
@@ -0,0 +1,172 @@
+package br.com.leonardoz.patterns.thread_safe.compound_actions;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ *
+ * Pattern: Atomic Compound Actions
+ *
+ * Example: Compare-and-swap idiom without locks
+ *
+ * CompareAndSwapUtil emulates compare-and-swap with an intrinsic lock, so even
+ * a plain read waits for the monitor while a writer holds it. Processors have
+ * the real instruction, reachable through a VarHandle: reads become volatile
+ * loads that never block, and writers only retry when they lose a race.
+ *
+ * compareAndSwap keeps the semantics of CompareAndSwapUtil (returns the value
+ * seen, swapped or not), so it can be used in its place.
+ *
+ * The weak variants may fail even when the value matches (spuriously), which
+ * is fine inside retry loops and cheaper on some processors (LL/SC based ones,
+ * like ARM).
+ *
+ */
+@ThreadSafe
+public class LockFreeCompareAndSwapUtil {
+
+	private static final VarHandle VALUE;
+
+	static {
+		try {
+			VALUE = MethodHandles.lookup().findVarHandle(LockFreeCompareAndSwapUtil.class, "value", int.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private volatile int value;
+
+	private static volatile int blackhole;
+
+	public LockFreeCompareAndSwapUtil() {
+	}
+
+	public LockFreeCompareAndSwapUtil(int initialValue) {
+		this.value = initialValue;
+	}
+
+	public int getValue() {
+		return value;
+	}
+
+	/*
+	 * Same as CompareAndSwapUtil: returns the old value, the swap happened if it
+	 * equals expected.
+	 */
+	public int compareAndSwap(int expected, int newValue) {
+		return compareAndExchange(expected, newValue);
+	}
+
+	public int compareAndExchange(int expected, int newValue) {
+		return (int) VALUE.compareAndExchange(this, expected, newValue);
+	}
+
+	public boolean compareAndSet(int expected, int newValue) {
+		return VALUE.compareAndSet(this, expected, newValue);
+	}
+
+	public boolean weakCompareAndSet(int expected, int newValue) {
+		return VALUE.weakCompareAndSet(this, expected, newValue);
+	}
+
+	/*
+	 * Weak CAS with release ordering only: enough to publish the new value to
+	 * readers, not ordered with later reads of this thread.
+	 */
+	public boolean weakCompareAndSetRelease(int expected, int newValue) {
+		return VALUE.weakCompareAndSetRelease(this, expected, newValue);
+	}
+
+	/*
+	 * The update function may run more than once, so it must be free of side
+	 * effects.
+	 */
+	public int getAndUpdate(IntUnaryOperator updateFn) {
+		int old;
+		do {
+			old = value;
+		} while (!VALUE.weakCompareAndSet(this, old, updateFn.applyAsInt(old)));
+		return old;
+	}
+
+	public int updateAndGet(IntUnaryOperator updateFn) {
+		int old;
+		int updated;
+		do {
+			old = value;
+			updated = updateFn.applyAsInt(old);
+		} while (!VALUE.weakCompareAndSet(this, old, updated));
+		return updated;
+	}
+
+	/**
+	 * Dummy benchmark: reader throughput while writers increment with a CAS loop,
+	 * synchronized emulation versus the lock-free version.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var processors = Runtime.getRuntime().availableProcessors();
+		var readers = Math.max(2, processors - 1);
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			for (int writers = 0; writers <= 2; writers++) {
+				var synced = new CompareAndSwapUtil();
+				run("synchronized", readers, writers, synced::getValue, () -> {
+					int old;
+					do {
+						old = synced.getValue();
+					} while (synced.compareAndSwap(old, old + 1) != old);
+				});
+				var lockFree = new LockFreeCompareAndSwapUtil();
+				run("lock-free", readers, writers, lockFree::getValue, () -> lockFree.updateAndGet(v -> v + 1));
+			}
+			System.out.println();
+		}
+	}
+
+	private static void run(String name, int readers, int writers, IntSupplier read, Runnable write)
+			throws InterruptedException {
+		var durationMillis = 500;
+		var stop = new AtomicBoolean();
+		var reads = new LongAdder();
+		var writes = new LongAdder();
+		var done = new CountDownLatch(readers + writers);
+		for (int r = 0; r < readers; r++) {
+			new Thread(() -> {
+				var count = 0L;
+				var sink = 0;
+				while (!stop.get()) {
+					sink ^= read.getAsInt();
+					count++;
+				}
+				reads.add(count);
+				blackhole = sink; // keeps the reads from being dropped
+				done.countDown();
+			}).start();
+		}
+		for (int w = 0; w < writers; w++) {
+			new Thread(() -> {
+				var count = 0L;
+				while (!stop.get()) {
+					write.run();
+					count++;
+				}
+				writes.add(count);
+				done.countDown();
+			}).start();
+		}
+		Thread.sleep(durationMillis);
+		stop.set(true);
+		done.await();
+		System.out.println(name + ": " + readers + " reader(s), " + writers + " writer(s): "
+				+ reads.sum() / durationMillis + " reads/ms, " + writes.sum() / durationMillis + " writes/ms");
+	}
+
+}
@@ -0,0 +1,296 @@
+package br.com.leonardoz.patterns.thread_safe.immutable_object;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import br.com.leonardoz.patterns.GuardedBy;
+import br.com.leonardoz.patterns.ThreadSafe;
+import br.com.leonardoz.patterns.thread_safe.lock_split.OSToolConfiguration;
+
+/**
+ * Pattern: Immutable Object with Volatile Reference
+ *
+ * Example: Copy-on-write configuration store
+ *
+ * OSToolConfiguration (lock_split) takes a lock on every read, and two reads
+ * may see fields from different updates (a new user with the old password).
+ *
+ * Here every configuration is an immutable Snapshot. Readers get the current
+ * one with a single volatile load, and all of its fields are consistent. A
+ * writer copies the current snapshot into a Builder, changes as many fields as
+ * it wants and publishes the result with compareAndSet, retrying on top of the
+ * newer snapshot if another writer got there first. Writes are expensive
+ * (a copy), reads are as cheap as they can be.
+ *
+ * Every snapshot has a version. Listeners are notified by one thread at a
+ * time, with increasing versions, and without holding any lock: the thread
+ * delivering keeps going until no newer version was published, and the others
+ * just leave their versions to it. When updates happen faster than listeners
+ * run, intermediate versions are skipped, but every listener always ends up
+ * seeing the latest one. A listener may call update: its version is delivered
+ * after the current one. A listener that throws doesn't stop the others.
+ *
+ */
+@ThreadSafe
+public class ConfigurationStore {
+
+	public interface Listener {
+		void onChange(Snapshot previous, Snapshot current);
+	}
+
+	private final AtomicReference<Snapshot> current = new AtomicReference<>(new Snapshot(new Builder(), 0));
+	private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+	private final Object notificationLock = new Object();
+
+	@GuardedBy("notificationLock")
+	private Snapshot notified = current.get();
+	@GuardedBy("notificationLock")
+	private boolean delivering;
+
+	public Snapshot get() {
+		return current.get();
+	}
+
+	/*
+	 * Applies the changes atomically and returns the published snapshot. The
+	 * changes may run more than once, so they must only touch the builder.
+	 */
+	public Snapshot update(Consumer<Builder> changes) {
+		while (true) {
+			var old = current.get();
+			var builder = old.toBuilder();
+			changes.accept(builder);
+			var updated = new Snapshot(builder, old.version + 1);
+			if (current.compareAndSet(old, updated)) {
+				notifyListeners();
+				return updated;
+			}
+		}
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	private void notifyListeners() {
+		synchronized (notificationLock) {
+			if (delivering) {
+				return; // the thread delivering will see the new version
+			}
+			delivering = true;
+		}
+		var drained = false;
+		try {
+			while (true) {
+				Snapshot previous;
+				Snapshot latest;
+				synchronized (notificationLock) {
+					latest = current.get();
+					if (latest.version <= notified.version) {
+						delivering = false; // with the check, or a version could be left behind
+						drained = true;
+						return;
+					}
+					previous = notified;
+					notified = latest;
+				}
+				for (var listener : listeners) {
+					try {
+						listener.onChange(previous, latest);
+					} catch (RuntimeException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		} finally {
+			if (!drained) { // an Error: let the next update deliver
+				synchronized (notificationLock) {
+					delivering = false;
+				}
+			}
+		}
+	}
+
+	public static final class Snapshot {
+		private final long version;
+		private final List<String> executorCommands;
+		private final String toolName;
+		private final String user;
+		private final String password;
+
+		private Snapshot(Builder builder, long version) {
+			this.version = version;
+			// not List.copyOf: null commands are kept, as in OSToolConfiguration
+			this.executorCommands = Collections.unmodifiableList(new ArrayList<>(builder.executorCommands));
+			this.toolName = builder.toolName;
+			this.user = builder.user;
+			this.password = builder.password;
+		}
+
+		public long getVersion() {
+			return version;
+		}
+
+		public List<String> getExecutorCommands() {
+			return executorCommands;
+		}
+
+		public String getToolName() {
+			return toolName;
+		}
+
+		public String getUser() {
+			return user;
+		}
+
+		public String getPassword() {
+			return password;
+		}
+
+		public Builder toBuilder() {
+			var builder = new Builder();
+			builder.executorCommands.addAll(executorCommands);
+			builder.toolName = toolName;
+			builder.user = user;
+			builder.password = password;
+			return builder;
+		}
+
+		@Override
+		public String toString() {
+			return "v" + version + " " + toolName + " " + user + " " + executorCommands;
+		}
+	}
+
+	/*
+	 * Not thread-safe; confined to the thread doing the update.
+	 */
+	public static final class Builder {
+		private final List<String> executorCommands = new ArrayList<>();
+		private String toolName;
+		private String user;
+		private String password;
+
+		private Builder() {
+		}
+
+		public Builder addExecutorCommand(String executorCommand) {
+			executorCommands.add(executorCommand);
+			return this;
+		}
+
+		public Builder removeExecutorCommand(String executorCommand) {
+			executorCommands.remove(executorCommand);
+			return this;
+		}
+
+		public Builder toolName(String toolName) {
+			this.toolName = toolName;
+			return this;
+		}
+
+		public Builder user(String user) {
+			this.user = user;
+			return this;
+		}
+
+		public Builder password(String password) {
+			this.password = password;
+			return this;
+		}
+	}
+
+	/**
+	 * Dummy read-heavy benchmark against OSToolConfiguration: readers get the
+	 * tool name, user and password while one writer changes user and password
+	 * together every 100 microseconds. Only the snapshot readers are guaranteed
+	 * to see a matching pair.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var readers = Math.max(2, Runtime.getRuntime().availableProcessors());
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+
+			var locked = new OSToolConfiguration();
+			locked.setToolName("tool");
+			run("OSToolConfiguration", readers, () -> matches(locked.getUser(), locked.getPassword()), i -> {
+				locked.setUser("user" + i);
+				locked.setPassword("password" + i);
+			});
+
+			var store = new ConfigurationStore();
+			store.update(b -> b.toolName("tool"));
+			var notifications = new LongAdder();
+			var lastNotified = new AtomicLong();
+			store.addListener((previous, latest) -> {
+				notifications.increment();
+				lastNotified.set(latest.getVersion());
+			});
+			run("ConfigurationStore", readers, () -> {
+				var snapshot = store.get();
+				return matches(snapshot.getUser(), snapshot.getPassword());
+			}, i -> store.update(b -> b.user("user" + i).password("password" + i)));
+			System.out.println("listener: " + notifications.sum() + " notifications, last version "
+					+ lastNotified.get() + " of " + store.get().getVersion());
+			System.out.println();
+		}
+	}
+
+	private static boolean matches(String user, String password) {
+		if (user == null || password == null) {
+			return user == password;
+		}
+		return user.substring(4).equals(password.substring(8));
+	}
+
+	private static void run(String name, int readers, BooleanSupplier read, IntConsumer write) throws InterruptedException {
+		var durationMillis = 500;
+		var stop = new AtomicBoolean();
+		var reads = new LongAdder();
+		var torn = new LongAdder();
+		var done = new CountDownLatch(readers + 1);
+		for (int r = 0; r < readers; r++) {
+			new Thread(() -> {
+				var count = 0L;
+				var inconsistent = 0L;
+				while (!stop.get()) {
+					if (!read.getAsBoolean()) {
+						inconsistent++;
+					}
+					count++;
+				}
+				reads.add(count);
+				torn.add(inconsistent);
+				done.countDown();
+			}).start();
+		}
+		new Thread(() -> {
+			for (int i = 0; !stop.get(); i++) {
+				write.accept(i);
+				LockSupport.parkNanos(100_000);
+			}
+			done.countDown();
+		}).start();
+		Thread.sleep(durationMillis);
+		stop.set(true);
+		done.await();
+		System.out.println(name + ": " + readers + " reader(s), " + reads.sum() / durationMillis + " reads/ms, "
+				+ torn.sum() + " torn reads");
+	}
+
+}
@@ -3,6 +3,7 @@ package br.com.leonardoz.patterns.thread_safe.lock_split;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import br.com.leonardoz.patterns.GuardedBy;
 import br.com.leonardoz.patterns.ThreadSafe;
@@ -36,8 +37,23 @@ public class LockSplit {
 	@GuardedBy("lockOtherState")
 	private Object otherState;
 
-	private Lock lockState = new ReentrantLock();
-	private Lock lockOtherStates = new ReentrantLock();
+	private final Lock lockState;
+	private final Lock lockAnotherState;
+	private final Lock lockOtherState;
+
+	public LockSplit() {
+		this(name -> new ReentrantLock());
+	}
+
+	/*
+	 * Creates each lock by its field name; lets the locks be profiled or
+	 * replaced without touching the class.
+	 */
+	public LockSplit(Function<String, Lock> lockFactory) {
+		this.lockState = lockFactory.apply("lockState");
+		this.lockAnotherState = lockFactory.apply("lockAnotherState");
+		this.lockOtherState = lockFactory.apply("lockOtherState");
+	}
 
 	public List<Object> stateReader() {
 		lockState.lock();
@@ -58,38 +74,38 @@ public class LockSplit {
 	}
 
 	public Object anotherStateReader() {
-		lockOtherStates.lock();
+		lockAnotherState.lock();
 		try {
 			return anotherState;
 		} finally {
-			lockOtherStates.unlock();
+			lockAnotherState.unlock();
 		}
 	}
 
 	public void anotherStateWriterMethod(Object param) {
-		lockOtherStates.lock();
+		lockAnotherState.lock();
 		try {
 			this.anotherState = param;
 		} finally {
-			lockOtherStates.unlock();
+			lockAnotherState.unlock();
 		}
 	}
 
 	public Object otherStateReader() {
-		lockOtherStates.lock();
+		lockOtherState.lock();
 		try {
 			return otherState;
 		} finally {
-			lockOtherStates.unlock();
+			lockOtherState.unlock();
 		}
 	}
 
 	public void otherStateWriterMethod(Object param) {
-		lockOtherStates.lock();
+		lockOtherState.lock();
 		try {
 			this.otherState = param;
 		} finally {
-			lockOtherStates.unlock();
+			lockOtherState.unlock();
 		}
 	}
 
@@ -3,6 +3,7 @@ package br.com.leonardoz.patterns.thread_safe.lock_split;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import br.com.leonardoz.patterns.GuardedBy;
 import br.com.leonardoz.patterns.ThreadSafe;
@@ -29,10 +30,25 @@ public class OSToolConfiguration {
 	@GuardedBy("lockPassword")
 	private String password;
 
-	private Lock lockExecutorCommands = new ReentrantLock();
-	private Lock lockToolName = new ReentrantLock();
-	private Lock lockUser = new ReentrantLock();
-	private Lock lockPassword = new ReentrantLock();
+	private final Lock lockExecutorCommands;
+	private final Lock lockToolName;
+	private final Lock lockUser;
+	private final Lock lockPassword;
+
+	public OSToolConfiguration() {
+		this(name -> new ReentrantLock());
+	}
+
+	/*
+	 * Creates each lock by its field name; lets the locks be profiled or
+	 * replaced without touching the class.
+	 */
+	public OSToolConfiguration(Function<String, Lock> lockFactory) {
+		this.lockExecutorCommands = lockFactory.apply("lockExecutorCommands");
+		this.lockToolName = lockFactory.apply("lockToolName");
+		this.lockUser = lockFactory.apply("lockUser");
+		this.lockPassword = lockFactory.apply("lockPassword");
+	}
 
 	public List<String> getExecutorCommands() {
 		lockExecutorCommands.lock();
@@ -0,0 +1,217 @@
+package br.com.leonardoz.patterns.thread_safe.lock_split;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+import br.com.leonardoz.patterns.GuardedBy;
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Lock Split
+ * 
+ * Example: OSToolConfiguration with optimistic reads (StampedLock)
+ * 
+ * A configuration is read thousands of times for each write, but with a
+ * ReentrantLock every read is a write to the lock state: two CAS operations and
+ * a cache line bouncing between every core reading it.
+ * 
+ * StampedLock#tryOptimisticRead only reads the lock state. The reader copies
+ * the field, then validates the stamp: if no writer got the lock in between,
+ * the copy is good and no shared memory was written. Only if the validation
+ * fails it falls back to a real read lock.
+ * 
+ * Optimistic reads fit fields that can be copied safely while being changed
+ * (references, primitives). The command list is read with the read lock, since
+ * copying a list while another thread changes it may fail.
+ * 
+ * StampedLock is not reentrant: never call another locking method while
+ * holding one of these locks.
+ * 
+ */
+@ThreadSafe
+public class StampedOSToolConfiguration {
+
+	@GuardedBy("lockExecutorCommands")
+	private final List<String> executorCommands = new ArrayList<>();
+
+	@GuardedBy("lockToolName")
+	private String toolName;
+
+	@GuardedBy("lockUser")
+	private String user;
+
+	@GuardedBy("lockPassword")
+	private String password;
+
+	private final StampedLock lockExecutorCommands = new StampedLock();
+	private final StampedLock lockToolName = new StampedLock();
+	private final StampedLock lockUser = new StampedLock();
+	private final StampedLock lockPassword = new StampedLock();
+
+	/*
+	 * A read-only copy, so callers never touch the guarded list. Null commands
+	 * are kept, as in OSToolConfiguration (List.copyOf would reject them).
+	 */
+	public List<String> getExecutorCommands() {
+		var stamp = lockExecutorCommands.readLock();
+		try {
+			return Collections.unmodifiableList(new ArrayList<>(executorCommands));
+		} finally {
+			lockExecutorCommands.unlockRead(stamp);
+		}
+	}
+
+	public void addExecutorCommands(String executorCommand) {
+		var stamp = lockExecutorCommands.writeLock();
+		try {
+			this.executorCommands.add(executorCommand);
+		} finally {
+			lockExecutorCommands.unlockWrite(stamp);
+		}
+	}
+
+	public void removeExecutorCommands(String executorCommand) {
+		var stamp = lockExecutorCommands.writeLock();
+		try {
+			this.executorCommands.remove(executorCommand);
+		} finally {
+			lockExecutorCommands.unlockWrite(stamp);
+		}
+	}
+
+	public String getToolName() {
+		var stamp = lockToolName.tryOptimisticRead();
+		var current = toolName;
+		if (lockToolName.validate(stamp)) {
+			return current;
+		}
+		stamp = lockToolName.readLock(); // a writer came in between
+		try {
+			return toolName;
+		} finally {
+			lockToolName.unlockRead(stamp);
+		}
+	}
+
+	public void setToolName(String toolName) {
+		var stamp = lockToolName.writeLock();
+		try {
+			this.toolName = toolName;
+		} finally {
+			lockToolName.unlockWrite(stamp);
+		}
+	}
+
+	public String getUser() {
+		var stamp = lockUser.tryOptimisticRead();
+		var current = user;
+		if (lockUser.validate(stamp)) {
+			return current;
+		}
+		stamp = lockUser.readLock();
+		try {
+			return user;
+		} finally {
+			lockUser.unlockRead(stamp);
+		}
+	}
+
+	public void setUser(String user) {
+		var stamp = lockUser.writeLock();
+		try {
+			this.user = user;
+		} finally {
+			lockUser.unlockWrite(stamp);
+		}
+	}
+
+	public String getPassword() {
+		var stamp = lockPassword.tryOptimisticRead();
+		var current = password;
+		if (lockPassword.validate(stamp)) {
+			return current;
+		}
+		stamp = lockPassword.readLock();
+		try {
+			return password;
+		} finally {
+			lockPassword.unlockRead(stamp);
+		}
+	}
+
+	public void setPassword(String password) {
+		var stamp = lockPassword.writeLock();
+		try {
+			this.password = password;
+		} finally {
+			lockPassword.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Dummy read-heavy benchmark against OSToolConfiguration: reader threads
+	 * call the three getters while one writer changes the user every 100 microseconds.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var readers = Math.max(2, Runtime.getRuntime().availableProcessors());
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			var locked = new OSToolConfiguration();
+			locked.setToolName("tool");
+			locked.setPassword("secret");
+			run("ReentrantLock", readers, () -> {
+				locked.getToolName();
+				locked.getUser();
+				locked.getPassword();
+			}, locked::setUser);
+			var stamped = new StampedOSToolConfiguration();
+			stamped.setToolName("tool");
+			stamped.setPassword("secret");
+			run("StampedLock", readers, () -> {
+				stamped.getToolName();
+				stamped.getUser();
+				stamped.getPassword();
+			}, stamped::setUser);
+			System.out.println();
+		}
+	}
+
+	private static void run(String name, int readers, Runnable read, Consumer<String> writer) throws InterruptedException {
+		var durationMillis = 500;
+		var stop = new AtomicBoolean();
+		var reads = new LongAdder();
+		var done = new CountDownLatch(readers + 1);
+		for (int r = 0; r < readers; r++) {
+			new Thread(() -> {
+				var count = 0L;
+				while (!stop.get()) {
+					read.run();
+					count++;
+				}
+				reads.add(count);
+				done.countDown();
+			}).start();
+		}
+		var writes = new long[1];
+		new Thread(() -> {
+			while (!stop.get()) {
+				writer.accept("user" + writes[0]++);
+				LockSupport.parkNanos(100_000);
+			}
+			done.countDown();
+		}).start();
+		Thread.sleep(durationMillis);
+		stop.set(true);
+		done.await();
+		System.out.println(name + ": " + readers + " reader(s), " + reads.sum() / durationMillis
+				+ " reads of 3 fields/ms, " + writes[0] + " writes");
+	}
+
+}
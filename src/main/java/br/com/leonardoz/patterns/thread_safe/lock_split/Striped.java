@@ -0,0 +1,233 @@
+package br.com.leonardoz.patterns.thread_safe.lock_split;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import br.com.leonardoz.patterns.ThreadSafe;
+
+/**
+ * Pattern: Lock Split
+ *
+ * Example: Lock striping
+ *
+ * LockSplit gives each group of variables its own lock, written by hand. When
+ * the state is keyed (accounts, cache entries, files) there are too many keys
+ * for a lock each, and one lock for all of them serializes everything.
+ *
+ * Striping is the middle ground: a fixed number of locks (stripes), and every
+ * key is mapped to one of them by its hash. Keys that share a stripe contend
+ * with each other, all others don't. ConcurrentHashMap did this internally up
+ * to Java 7.
+ *
+ * - The number of stripes is rounded up to a power of two, so a key is mapped
+ * with a mask instead of a division.
+ *
+ * - Eager stripes are padded, so two locks next to each other in memory don't
+ * share a cache line (false sharing).
+ *
+ * - Lazy stripes are only created when a key first maps to them; good for
+ * large stripe counts where most stripes are never used.
+ *
+ * - bulkGet returns the stripes of several keys, without duplicates, sorted by
+ * stripe index. Every thread locking them in that order can't deadlock with
+ * another doing the same.
+ *
+ */
+@ThreadSafe
+public abstract class Striped<L> {
+
+	private static final int MAX_STRIPES = 1 << 30;
+
+	private final int mask;
+
+	private Striped(int stripes) {
+		if (stripes <= 0 || stripes > MAX_STRIPES) {
+			throw new IllegalArgumentException("Stripes must be between 1 and " + MAX_STRIPES);
+		}
+		this.mask = (stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1) - 1;
+	}
+
+	public static Striped<Lock> lock(int stripes) {
+		return new Eager<>(stripes, PaddedLock::new);
+	}
+
+	public static Striped<Lock> lazyLock(int stripes) {
+		return new Lazy<>(stripes, ReentrantLock::new);
+	}
+
+	public static Striped<ReadWriteLock> readWriteLock(int stripes) {
+		return new Eager<>(stripes, PaddedReadWriteLock::new);
+	}
+
+	public static Striped<ReadWriteLock> lazyReadWriteLock(int stripes) {
+		return new Lazy<>(stripes, ReentrantReadWriteLock::new);
+	}
+
+	public L get(Object key) {
+		return getAt(indexFor(key));
+	}
+
+	public abstract L getAt(int index);
+
+	public int indexFor(Object key) {
+		var hash = key.hashCode();
+		return (hash ^ (hash >>> 16)) & mask; // spreads the high bits, as HashMap does
+	}
+
+	public int size() {
+		return mask + 1;
+	}
+
+	/*
+	 * The stripes of all keys, each once, in the order they must be acquired.
+	 * Release them in the reverse order.
+	 */
+	public List<L> bulkGet(Iterable<?> keys) {
+		var indexes = new TreeSet<Integer>();
+		for (var key : keys) {
+			indexes.add(indexFor(key));
+		}
+		var stripes = new ArrayList<L>(indexes.size());
+		for (var index : indexes) {
+			stripes.add(getAt(index));
+		}
+		return stripes;
+	}
+
+	/*
+	 * Locks the stripes of all keys in order, runs the action and unlocks them.
+	 */
+	public static void withLocks(Striped<Lock> striped, Iterable<?> keys, Runnable action) {
+		var stripes = striped.bulkGet(keys);
+		var locked = 0;
+		try {
+			for (var stripe : stripes) {
+				stripe.lock();
+				locked++;
+			}
+			action.run();
+		} finally {
+			for (int i = locked - 1; i >= 0; i--) {
+				stripes.get(i).unlock();
+			}
+		}
+	}
+
+	private static final class Eager<L> extends Striped<L> {
+		private final Object[] stripes;
+
+		Eager(int stripes, Supplier<L> factory) {
+			super(stripes);
+			this.stripes = new Object[size()];
+			for (int i = 0; i < this.stripes.length; i++) {
+				this.stripes[i] = factory.get();
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public L getAt(int index) {
+			return (L) stripes[index];
+		}
+	}
+
+	private static final class Lazy<L> extends Striped<L> {
+		private final AtomicReferenceArray<L> stripes;
+		private final Supplier<L> factory;
+
+		Lazy(int stripes, Supplier<L> factory) {
+			super(stripes);
+			this.stripes = new AtomicReferenceArray<>(size());
+			this.factory = factory;
+		}
+
+		@Override
+		public L getAt(int index) {
+			var stripe = stripes.get(index);
+			if (stripe != null) {
+				return stripe;
+			}
+			var created = factory.get();
+			// if another thread won the race, everybody uses its lock
+			return stripes.compareAndSet(index, null, created) ? created : stripes.get(index);
+		}
+	}
+
+	/*
+	 * The padding fields keep the lock state of stripes created one after the
+	 * other from sharing a cache line.
+	 */
+	@SuppressWarnings("unused")
+	private static final class PaddedLock extends ReentrantLock {
+		private static final long serialVersionUID = 1L;
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	@SuppressWarnings("unused")
+	private static final class PaddedReadWriteLock extends ReentrantReadWriteLock {
+		private static final long serialVersionUID = 1L;
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	/**
+	 * Dummy benchmark and check: transfers between random accounts, locking both
+	 * accounts' stripes in order, against a single lock. The total must stay the
+	 * same.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		var accounts = 1_024;
+		var threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+		for (int round = 1; round <= 3; round++) {
+			System.out.println("#### Round " + round);
+			transfers("single lock", lock(1), accounts, threads);
+			transfers("64 stripes", lock(64), accounts, threads);
+			transfers("64 lazy stripes", lazyLock(64), accounts, threads);
+			System.out.println();
+		}
+	}
+
+	private static void transfers(String name, Striped<Lock> striped, int accounts, int threads)
+			throws InterruptedException {
+		var operations = 500_000;
+		var balances = new long[accounts];
+		var done = new CountDownLatch(threads);
+		var before = System.nanoTime();
+		for (int t = 0; t < threads; t++) {
+			new Thread(() -> {
+				var random = ThreadLocalRandom.current();
+				for (int i = 0; i < operations; i++) {
+					var from = random.nextInt(accounts);
+					var to = random.nextInt(accounts);
+					withLocks(striped, List.of(from, to), () -> {
+						balances[from] -= 10;
+						balances[to] += 10;
+					});
+				}
+				done.countDown();
+			}).start();
+		}
+		done.await();
+		var millis = (System.nanoTime() - before) / 1_000_000;
+		var total = 0L;
+		for (int i = 0; i < accounts; i++) {
+			var lock = striped.get(i);
+			lock.lock(); // also makes the last writes visible here
+			try {
+				total += balances[i];
+			} finally {
+				lock.unlock();
+			}
+		}
+		System.out.println(name + ": " + millis + " ms, total " + total + " (expected 0)");
+	}
+
+}